@@ -3,6 +3,22 @@ plugins {
     alias(libs.plugins.google.gms.google.services)
 }
 
+// The government station list is parsed and its coordinates converted once, here,
+// into a binary asset read at runtime (see StationAsset in :core)
+val stationAssetTool: Configuration by configurations.creating {
+    attributes { attribute(Usage.USAGE_ATTRIBUTE, objects.named(Usage.JAVA_RUNTIME)) }
+}
+val stationAssetDir = layout.buildDirectory.dir("generated/stationAsset")
+val compileStationAsset by tasks.registering(JavaExec::class) {
+    val source = file("data/gasstations.json")
+    val output = stationAssetDir.map { it.file("stations.bin") }
+    inputs.file(source)
+    outputs.file(output)
+    classpath = stationAssetTool
+    mainClass.set("com.yaniv.FullTank.parsers.StationAsset")
+    args(source.absolutePath, output.get().asFile.absolutePath)
+}
+
 android {
     namespace = "com.yaniv.FullTank"
     compileSdk = 35
@@ -31,10 +47,29 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    sourceSets {
+        getByName("main") {
+            assets.srcDir(stationAssetDir)
+        }
+    }
+    androidResources {
+        // Stored uncompressed so the station asset can be memory mapped
+        noCompress += "bin"
+    }
+    testOptions {
+        // JVM tests drive drawing code against the stubbed android.jar
+        unitTests.isReturnDefaultValues = true
+    }
+}
+
+tasks.named("preBuild") {
+    dependsOn(compileStationAsset)
 }
 
 dependencies {
 
+    implementation(project(":core"))
+    stationAssetTool(project(":core"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.location.Location;
 import android.location.LocationListener;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.view.View;
 import android.widget.Toast;
 
@@ -17,12 +18,15 @@ import androidx.core.view.WindowInsetsCompat;
 import com.yaniv.FullTank.dm.GasStation;
 import com.yaniv.FullTank.utils.GasStationDataManager;
 import com.yaniv.FullTank.utils.LocationHelper;
+import com.yaniv.FullTank.utils.LocationState;
 import com.yaniv.FullTank.utils.MapManager;
+import com.yaniv.FullTank.utils.MapTileSetup;
+import com.yaniv.FullTank.utils.MarkerUtils;
+import com.yaniv.FullTank.utils.TilePrefetcher;
 import com.yaniv.FullTank.utils.UIManager;
 
 import org.osmdroid.config.Configuration;
 import org.osmdroid.events.MapEventsReceiver;
-import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.MapEventsOverlay;
@@ -39,10 +43,14 @@ public class MainActivity extends AppCompatActivity implements LocationListener,
     private MapManager mapManager;
     private LocationHelper locationHelper;
     private GasStationDataManager dataManager;
+    private UIManager uiManager;
+    private TilePrefetcher tilePrefetcher;
+    private final LocationState locationState = new LocationState();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        long startMs = SystemClock.uptimeMillis();
         Context context = getApplicationContext();
         // Initialize osmdroid configuration for map display
         Configuration.getInstance().load(context, context.getSharedPreferences(context.getPackageName() + "_preferences", Context.MODE_PRIVATE));
@@ -57,15 +65,17 @@ public class MainActivity extends AppCompatActivity implements LocationListener,
 
         // Initialize and configure the map view
         map = findViewById(R.id.mapView);
-        map.setTileSource(TileSourceFactory.MAPNIK);
+        // Offline vector tiles when a map file is installed, online tiles otherwise
+        MapTileSetup.setup(this, map, startMs);
+        tilePrefetcher = new TilePrefetcher(map);
         map.getController().setZoom(15.0);
         map.setMultiTouchControls(true);
 
         // Initialize all manager classes
-        mapManager = new MapManager(this, map);
-        locationHelper = new LocationHelper(this, map);
         dataManager = new GasStationDataManager(this, this);
-        UIManager uiManager = new UIManager(this, locationHelper, mapManager, dataManager);
+        mapManager = new MapManager(this, map, dataManager, locationState);
+        locationHelper = new LocationHelper(this, map);
+        uiManager = new UIManager(this, locationHelper, mapManager, dataManager);
 
         // Close info windows and lists when touching the map
         MapEventsOverlay mapEventsOverlay = new MapEventsOverlay(new MapEventsReceiver() {
@@ -126,23 +136,21 @@ public class MainActivity extends AppCompatActivity implements LocationListener,
 
     @Override
     public void onLocationChanged(@NonNull Location location) {
-        // Update map view to center on new location
-        mapManager.animateToLocation(
-            new GeoPoint(location.getLatitude(), location.getLongitude()),
-            map.getZoomLevelDouble()
-        );
-        // Update markers with new distances from current location
-        // The MapManager will handle filtering of generic stations
-        mapManager.updateMarkers(dataManager.getAllStations(), location);
+        // Keep the map on the new location without restarting a running animation
+        mapManager.followLocation(location);
+        // Load the tiles ahead while driving
+        tilePrefetcher.onLocationChanged(location);
+        // Recompute distances in the lists only once the user actually moved
+        if (locationState.update(location)) {
+            uiManager.onLocationChanged(location);
+        }
     }
 
     // Callbacks for gas station data loading
     @Override
     public void onDataLoaded(List<GasStation> stations) {
         runOnUiThread(() -> {
-            Location currentLocation = locationHelper.getLastLocation();
-            // The MapManager will handle filtering of generic stations
-            mapManager.updateMarkers(stations, currentLocation);
+            uiManager.refresh();
             Toast.makeText(this, "Loaded " + stations.size() + " stations", Toast.LENGTH_SHORT).show();
         });
     }
@@ -170,4 +178,25 @@ public class MainActivity extends AppCompatActivity implements LocationListener,
         map.onPause();
         locationHelper.stopLocationUpdates();
     }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MarkerUtils.onTrimMemory(level);
+        mapManager.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        uiManager.release();
+        mapManager.release();
+        tilePrefetcher.release();
+    }
 }
\ No newline at end of file
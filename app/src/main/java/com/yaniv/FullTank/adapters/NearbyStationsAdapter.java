@@ -12,12 +12,12 @@ import androidx.recyclerview.widget.DiffUtil;
 
 import com.yaniv.FullTank.R;
 import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.index.StationStore;
+import com.yaniv.FullTank.query.StationResults;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 /**
  * Adapter for displaying nearby gas stations in a RecyclerView.
@@ -25,9 +25,13 @@ import java.util.Set;
  * Similar to SearchResultsAdapter but specifically for the nearby stations list.
  */
 public class NearbyStationsAdapter extends RecyclerView.Adapter<NearbyStationsAdapter.ViewHolder> {
-    /** List of gas stations to display */
-    private List<GasStation> stations = new ArrayList<>();
-    private Set<Integer> disabledStations = new HashSet<>();  // Store IDs of disabled stations
+    /** Gas stations to display, with their distances */
+    private StationResults stations = StationResults.empty();
+    /** Ascending store rows matching the search, or null when no station is greyed out */
+    private int[] matchingRows;
+    private StationStore matchingStore;
+    /** Whether the station at each position is greyed out */
+    private boolean[] disabled = new boolean[0];
     private final OnStationClickListener listener;
     private boolean showingDiesel = false;  // Controls which fuel price to display
 
@@ -43,10 +47,10 @@ public class NearbyStationsAdapter extends RecyclerView.Adapter<NearbyStationsAd
     }
 
     private static class StationDiffCallback extends DiffUtil.Callback {
-        private final List<GasStation> oldList;
-        private final List<GasStation> newList;
+        private final StationResults oldList;
+        private final StationResults newList;
 
-        StationDiffCallback(List<GasStation> oldList, List<GasStation> newList) {
+        StationDiffCallback(StationResults oldList, StationResults newList) {
             this.oldList = oldList;
             this.newList = newList;
         }
@@ -72,7 +76,7 @@ public class NearbyStationsAdapter extends RecyclerView.Adapter<NearbyStationsAd
             GasStation newStation = newList.get(newItemPosition);
             return oldStation.getCompany().equals(newStation.getCompany()) &&
                    oldStation.getAddress().equals(newStation.getAddress()) &&
-                   oldStation.getDistance() == newStation.getDistance() &&
+                   oldList.distance(oldItemPosition) == newList.distance(newItemPosition) &&
                    oldStation.getFuel_prices().getPetrol_95() == newStation.getFuel_prices().getPetrol_95() &&
                    oldStation.getFuel_prices().getDiesel() == newStation.getFuel_prices().getDiesel();
         }
@@ -81,85 +85,71 @@ public class NearbyStationsAdapter extends RecyclerView.Adapter<NearbyStationsAd
     /**
      * Updates the list of stations and refreshes the view while preserving disabled states
      */
-    public void setStations(List<GasStation> newStations) {
-        List<GasStation> oldList = new ArrayList<>(stations);
-        List<GasStation> newList = new ArrayList<>(newStations != null ? newStations : new ArrayList<>());
+    public void setStations(StationResults newStations) {
+        // Results are read-only, so neither list needs a defensive copy
+        StationResults oldList = stations;
+        StationResults newList = newStations != null ? newStations : StationResults.empty();
         
         // Calculate the difference between old and new lists
         DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new StationDiffCallback(oldList, newList));
 
-        // Store current disabled states
-        Set<Integer> currentDisabled = new HashSet<>(disabledStations);
-        
-        // Clear and update disabled states for new stations
-        Set<Integer> newDisabledStations = new HashSet<>();
-        for (GasStation station : newList) {
-            if (currentDisabled.contains(station.getId())) {
-                newDisabledStations.add(station.getId());
-            }
+        // Test the new rows against the current search
+        boolean[] newDisabled = new boolean[newList.size()];
+        for (int i = 0; i < newDisabled.length; i++) {
+            newDisabled[i] = isDisabled(newList, i);
         }
 
         // Update the data atomically
         stations = newList;
-        disabledStations = newDisabledStations;
+        disabled = newDisabled;
 
         // Dispatch updates to the RecyclerView
         diffResult.dispatchUpdatesTo(this);
     }
 
     /**
-     * Updates the list of disabled stations
+     * Greys out the displayed stations that do not match the search
+     *
+     * @param store Snapshot the rows belong to
+     * @param matchingRows Ascending rows of the matching stations
      */
-    public void updateDisabledStations(Set<Integer> filteredStationIds) {
-        List<Integer> changedPositions = new ArrayList<>();
-        Set<Integer> newDisabledStations = new HashSet<>();
-        
-        for (int i = 0; i < stations.size(); i++) {
-            GasStation station = stations.get(i);
-            boolean wasDisabled = disabledStations.contains(station.getId());
-            boolean shouldBeDisabled = !filteredStationIds.contains(station.getId());
-            
-            if (shouldBeDisabled) {
-                newDisabledStations.add(station.getId());
-            }
-            
-            if (wasDisabled != shouldBeDisabled) {
-                changedPositions.add(i);
-            }
-        }
-        
-        // Update disabled stations atomically
-        disabledStations = newDisabledStations;
-        
-        // Notify only the items that changed state
-        for (int position : changedPositions) {
-            notifyItemChanged(position, "disabled_state_changed");
-        }
+    public void updateDisabledStations(StationStore store, int[] matchingRows) {
+        this.matchingStore = store;
+        this.matchingRows = matchingRows;
+        refreshDisabled();
     }
 
     /**
      * Clears all disabled states, making all stations clickable
      */
     public void clearDisabledStations() {
-        if (!disabledStations.isEmpty()) {
-            List<Integer> previouslyDisabledPositions = new ArrayList<>();
-            
-            for (int i = 0; i < stations.size(); i++) {
-                if (disabledStations.contains(stations.get(i).getId())) {
-                    previouslyDisabledPositions.add(i);
-                }
-            }
-            
-            // Clear disabled stations atomically
-            disabledStations = new HashSet<>();
-            
-            // Notify only the items that were enabled
-            for (int position : previouslyDisabledPositions) {
-                notifyItemChanged(position, "disabled_state_changed");
+        matchingStore = null;
+        matchingRows = null;
+        refreshDisabled();
+    }
+
+    /**
+     * Recomputes the disabled state of every position, notifying only the items that changed
+     */
+    private void refreshDisabled() {
+        for (int i = 0; i < disabled.length; i++) {
+            boolean shouldBeDisabled = isDisabled(stations, i);
+            if (disabled[i] != shouldBeDisabled) {
+                disabled[i] = shouldBeDisabled;
+                notifyItemChanged(i, "disabled_state_changed");
             }
         }
     }
 
+    /**
+     * Tests a station by its row, since ids repeat across sources. Rows of
+     * another snapshot than the search's are left enabled until the next result.
+     */
+    private boolean isDisabled(StationResults list, int i) {
+        return matchingRows != null && list.getStore() == matchingStore
+                && Arrays.binarySearch(matchingRows, list.row(i)) < 0;
+    }
+
     /**
      * Toggles between showing diesel or 95 fuel prices
      */
@@ -188,7 +178,7 @@ public class NearbyStationsAdapter extends RecyclerView.Adapter<NearbyStationsAd
                     holder.priceText.setTextColor(Color.parseColor("#0077cc"));
                 } else if (payload.equals("disabled_state_changed")) {
                     // Update only the disabled state
-                    boolean isDisabled = disabledStations.contains(station.getId());
+                    boolean isDisabled = disabled[position];
                     float alpha = isDisabled ? 0.5f : 1.0f;
                     holder.companyText.setAlpha(alpha);
                     holder.addressText.setAlpha(alpha);
@@ -205,7 +195,7 @@ public class NearbyStationsAdapter extends RecyclerView.Adapter<NearbyStationsAd
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
         GasStation station = stations.get(position);
-        boolean isDisabled = disabledStations.contains(station.getId());
+        boolean isDisabled = disabled[position];
 
         // Set basic station information
         holder.companyText.setText(station.getCompany());
@@ -217,10 +207,11 @@ public class NearbyStationsAdapter extends RecyclerView.Adapter<NearbyStationsAd
         holder.priceText.setTextColor(Color.parseColor("#0077cc"));
         
         // Format and display distance
-        if (station.getDistance() < 1000) {
-            holder.distanceText.setText(String.format(Locale.US, "%.0fm", station.getDistance()));
+        float distance = stations.distance(position);
+        if (distance < 1000) {
+            holder.distanceText.setText(String.format(Locale.US, "%.0fm", distance));
         } else {
-            holder.distanceText.setText(String.format(Locale.US, "%.1fkm", station.getDistance() / 1000));
+            holder.distanceText.setText(String.format(Locale.US, "%.1fkm", distance / 1000));
         }
         
         // Apply disabled state to all views
@@ -12,9 +12,8 @@ import androidx.recyclerview.widget.DiffUtil;
 
 import com.yaniv.FullTank.R;
 import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.query.StationResults;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
 
 /**
@@ -23,8 +22,8 @@ import java.util.Locale;
  * It uses DiffUtil for efficient updates and supports toggling between diesel and petrol prices.
  */
 public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdapter.ViewHolder> {
-    /** List of gas stations to display */
-    private List<GasStation> stations = new ArrayList<>();
+    /** Gas stations to display, with their distances */
+    private StationResults stations = StationResults.empty();
     /** Listener for handling station selection events */
     private final OnStationClickListener listener;
     /** Flag to control which fuel price type to display (diesel or 95) */
@@ -55,10 +54,10 @@ public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdap
      * This method calculates the minimum number of changes needed to update the list
      * and applies them with proper animations.
      *
-     * @param newStations New list of stations to display
+     * @param newStations New stations to display; read-only, so kept as they are
      */
-    public void setStations(List<GasStation> newStations) {
-        List<GasStation> newList = new ArrayList<>(newStations != null ? newStations : new ArrayList<>());
+    public void setStations(StationResults newStations) {
+        StationResults newList = newStations != null ? newStations : StationResults.empty();
         DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
             @Override
             public int getOldListSize() {
@@ -83,7 +82,7 @@ public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdap
                 // Compare all relevant fields to determine if an update is needed
                 return oldStation.getCompany().equals(newStation.getCompany()) &&
                        oldStation.getAddress().equals(newStation.getAddress()) &&
-                       oldStation.getDistance() == newStation.getDistance() &&
+                       stations.distance(oldItemPosition) == newList.distance(newItemPosition) &&
                        oldStation.getFuel_prices().getPetrol_95() == newStation.getFuel_prices().getPetrol_95() &&
                        oldStation.getFuel_prices().getDiesel() == newStation.getFuel_prices().getDiesel();
             }
@@ -129,10 +128,11 @@ public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdap
         holder.priceTextView.setTextColor(Color.parseColor("#0077cc"));
         
         // Format and display distance
-        if (station.getDistance() < 1000) {
-            holder.distanceTextView.setText(String.format(Locale.US, "%.0fm", station.getDistance()));
+        float distance = stations.distance(position);
+        if (distance < 1000) {
+            holder.distanceTextView.setText(String.format(Locale.US, "%.0fm", distance));
         } else {
-            holder.distanceTextView.setText(String.format(Locale.US, "%.1fkm", station.getDistance() / 1000));
+            holder.distanceTextView.setText(String.format(Locale.US, "%.1fkm", distance / 1000));
         }
         
         // Setup click listener for station selection
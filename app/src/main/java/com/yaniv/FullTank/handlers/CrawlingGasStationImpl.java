@@ -8,130 +8,177 @@ import com.yaniv.FullTank.dm.FuelPrices;
 import com.yaniv.FullTank.dm.GPS;
 import com.yaniv.FullTank.dm.GasStation;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import com.yaniv.FullTank.parsers.MikaParser;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class CrawlingGasStationImpl implements IGasStationHandler {
     private static final String TAG = "CrawlingGasStationImpl";
+    private static final int FIRST_ID = 1000;
+    private static final long MAX_LISTING_BYTES = 2L << 20;
+    private static final long MAX_PAGE_BYTES = 1L << 20;
+    /**
+     * Last parse of the listing and of each station page, reused while the site sends the same page.
+     * Only pages of the latest listing are kept.
+     */
+    private static final HttpFetcher.ParseCache<List<MikaParser.Listing>> listingCache = new HttpFetcher.ParseCache<>();
+    private static final Map<String, HttpFetcher.ParseCache<MikaParser.StationPage>> pageCaches =
+            new ConcurrentHashMap<>();
     String url;
     String source;
-    List<GasStation> stations;
     Context context;
+    private final long timeout;
+    private final TimeUnit timeoutUnit;
+    /** Cleared when the last fetch ran out of time before every page was read */
+    private volatile boolean complete = true;
 
-    public CrawlingGasStationImpl(String url, String source, Context context) {
+    /**
+     * @param timeout How long to crawl before settling for the stations read so far
+     */
+    public CrawlingGasStationImpl(String url, String source, Context context, long timeout, TimeUnit timeoutUnit) {
         this.url = url;
         this.source = source;
         this.context = context;
-        this.stations = fetchGasStations(url, source);
+        this.timeout = timeout;
+        this.timeoutUnit = timeoutUnit;
     }
 
+    /**
+     * Fetches the listing, then every station page. Pages are requested together;
+     * the shared client limits how many run against the site at once.
+     * When the timeout passes, the stations of the pages read so far are returned
+     * and {@link #isComplete()} turns false. Then, or once the returned future is
+     * cancelled or failed, requests still running are cancelled and remaining
+     * pages are not parsed or geocoded.
+     */
     @Override
-    public List<GasStation> fetchGasStations(String query, String type) {
-        if (!type.equals("mika")) {
-            return new ArrayList<>();
+    public CompletableFuture<List<GasStation>> fetchGasStations() {
+        if (!source.equals("mika")) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
         }
 
-        List<GasStation> stations = new ArrayList<>();
-        Set<String> processedStations = new HashSet<>(); // To avoid duplicates
-        
-        try {
-            String html = IGasStationHandler.sendHTTPRequest(query);
-            Document doc = Jsoup.parse(html);
-            
-            // Find all h2 elements
-            Elements allH2 = doc.select("h2");
-            Log.d(TAG, "All H2 elements: " + allH2.size());
-            int id = 1000;
-            for (Element h2 : allH2) {
-                try {
-                    String fullText = h2.text().trim();
-                    
-                    // Skip if already processed
-                    if (processedStations.contains(fullText)) {
-                        continue;
+        CompletableFuture<List<GasStation>> result = new CompletableFuture<>();
+        // Completes (exceptionally) when time is up or the result is done, and stops the work left
+        CompletableFuture<Void> stop = Futures.withTimeout(new CompletableFuture<>(), timeout, timeoutUnit);
+        result.whenComplete((stations, error) -> stop.cancel(false));
+        CompletableFuture<List<MikaParser.Listing>> listingRequest = IGasStationHandler.sendHTTPRequest(url,
+                MAX_LISTING_BYTES, listingCache, body -> MikaParser.parseListing(text(body)));
+        stop.whenComplete((v, e) -> listingRequest.cancel(false));
+        listingRequest
+                .thenCompose(listings -> {
+                    Log.d(TAG, "Station listings: " + listings.size());
+                    Set<String> pageUrls = new HashSet<>();
+                    for (MikaParser.Listing listing : listings) {
+                        pageUrls.add(listing.getUrl());
                     }
-                    
-                    processedStations.add(fullText);
-                    String innerURL = h2.select("a[href]").attr("href");
-                    if (!innerURL.startsWith("http"))
-                        continue;
-                    String innerHTML = IGasStationHandler.sendHTTPRequest(innerURL);
-                    Document innerDoc = Jsoup.parse(innerHTML);
-                    String openingHours = innerDoc.select(".info.activity-hours .sub-title").text();
-                    Elements priceElements = innerDoc.select(".info.cash .list li");
-                    String price95 = "";
-                    String price98 = "";
-                    String dieselPrice = "";
-                    for (Element priceElement : priceElements) {
-                        String fuelType = priceElement.select(".sub-title").text();
-                        String price = priceElement.select("span.value").text().replace("₪", "").trim();
-                        switch (fuelType) {
-                            case "בנזין 95":
-                                price95 = price;
-                                break;
-                            case "בנזין 98":
-                                price98 = price;
-                                break;
-                            case "סולר":
-                                dieselPrice = price;
-                                break;
-                        }
+                    pageCaches.keySet().retainAll(pageUrls);
+                    Geocoder geocode = new Geocoder(context, Locale.getDefault());
+                    List<CompletableFuture<GasStation>> pages = new ArrayList<>();
+                    for (MikaParser.Listing listing : listings) {
+                        if (stop.isDone()) break;
+                        pages.add(fetchStation(listing, geocode, stop));
                     }
-                    // Remove "חדש!" prefix if present, but keep the rest exactly as is
-                    String stationText = fullText.startsWith("חדש!") ? 
-                        fullText.substring("חדש!".length()).trim() : fullText;
-                    
-                    // Find the company name from the image alt attribute
-                    String company = "unknown";
-                    Element parent = h2.parent();
-                    if (parent != null) {
-                        Element img = parent.select("img[class^=alignnone]").first();
-                        if (img != null) {
-                            String alt = img.attr("alt");
-                            if (!alt.isEmpty()) {
-                                company = alt;
-                            }
-                            Log.d(TAG, "Found image with alt: " + alt + " and class: " + img.attr("class"));
-                        } else {
-                            Log.d(TAG, "No image found with class starting with alignnone");
-                        }
+                    // Every page, or what is read by the time the crawl has to stop
+                    CompletableFuture<Void> allPages = CompletableFuture.allOf(pages.toArray(new CompletableFuture[0]));
+                    return CompletableFuture.anyOf(allPages, stop)
+                            .handle((v, e) -> collect(listings.size(), pages));
+                })
+                .whenComplete((stations, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Error fetching stations", error);
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(stations);
                     }
-                    Geocoder geocode = new Geocoder(context, Locale.getDefault());
-                    Address address = Objects.requireNonNull(geocode.getFromLocationName(stationText, 1)).get(0);
-                    double double95 = 0.0;
-                    double double98 = 0.0;
-                    double doubleDiesel = 0.0;
-                    if (!price95.isEmpty())
-                        double95 = Double.parseDouble(price95);
-                    if (!price98.isEmpty())
-                        double98 = Double.parseDouble(price98);
-                    if (!dieselPrice.isEmpty())
-                        doubleDiesel = Double.parseDouble(dieselPrice);
-                    GasStation station = new GasStation(id++, stationText, company, new GPS(address.getLatitude(), address.getLongitude()), openingHours, new FuelPrices(double98,double95,doubleDiesel), true);
-                    stations.add(station);
-                    Log.d(TAG, "Added station: " + stationText + " (Company: " + company + ")");
-                } catch (Exception e) {
-                    Log.e(TAG, "Error processing station element", e);
-                }
-            }
-            
-            Log.d(TAG, "Total stations found: " + stations.size());
-        } catch (Exception e) {
-            Log.e(TAG, "Error fetching stations", e);
+                });
+        return result;
+    }
+
+    /**
+     * @return Whether the last fetch read every page before its timeout
+     */
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return The stations of the pages read so far, numbered in listing order
+     */
+    private List<GasStation> collect(int listings, List<CompletableFuture<GasStation>> pages) {
+        List<GasStation> stations = new ArrayList<>();
+        int id = FIRST_ID;
+        int read = 0;
+        for (CompletableFuture<GasStation> page : pages) {
+            if (!page.isDone()) continue;
+            read++;
+            GasStation station = page.join();
+            if (station == null) continue;
+            station.setId(id++);
+            stations.add(station);
+        }
+        if (read < listings) {
+            complete = false;
+            Log.w(TAG, "Timed out after " + read + " of " + listings + " pages");
         }
+        Log.d(TAG, "Total stations found: " + stations.size());
         return stations;
     }
 
-    public List<GasStation> getStations() {
-        return stations;
+    /**
+     * @return The station of a listing, or null if its page or address could not be read
+     */
+    private CompletableFuture<GasStation> fetchStation(MikaParser.Listing listing, Geocoder geocode,
+                                                       CompletableFuture<?> stop) {
+        HttpFetcher.ParseCache<MikaParser.StationPage> pageCache =
+                pageCaches.computeIfAbsent(listing.getUrl(), pageUrl -> new HttpFetcher.ParseCache<>());
+        CompletableFuture<MikaParser.StationPage> request = IGasStationHandler.sendHTTPRequest(listing.getUrl(),
+                MAX_PAGE_BYTES, pageCache, body -> {
+                    if (stop.isDone()) throw new CancellationException();
+                    return MikaParser.parseStationPage(text(body));
+                });
+        stop.whenComplete((v, e) -> request.cancel(false));
+        return request
+                .thenApplyAsync(page -> {
+                    if (stop.isDone()) return null;
+                    String stationText = listing.getStationText();
+                    try {
+                        Address address = Objects.requireNonNull(geocode.getFromLocationName(stationText, 1)).get(0);
+                        Log.d(TAG, "Added station: " + stationText + " (Company: " + listing.getCompany() + ")");
+                        return new GasStation(0, stationText, listing.getCompany(),
+                                new GPS(address.getLatitude(), address.getLongitude()), page.getOpeningHours(),
+                                new FuelPrices(page.getPetrol98(), page.getPetrol95(), page.getDiesel()), true);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, Futures.geocoder())
+                .exceptionally(e -> {
+                    if (!stop.isDone()) {
+                        Log.e(TAG, "Error processing station element", e);
+                    }
+                    return null;
+                });
+    }
+
+    private static String text(Reader body) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        for (int read; (read = body.read(buffer)) != -1; ) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
     }
 }
@@ -0,0 +1,90 @@
+package com.yaniv.FullTank.handlers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helpers for composing the handlers' futures without blocking threads.
+ * CompletableFuture#orTimeout is Java 9 and not available on every supported
+ * Android version, so timeouts are scheduled on one shared timer thread.
+ */
+public final class Futures {
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Futures-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicInteger workerCount = new AtomicInteger();
+    /** Runs the handlers' parsing and disk work, off OkHttp's and the main thread */
+    private static final ExecutorService worker = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "Handlers-" + workerCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicInteger geocoderCount = new AtomicInteger();
+    /**
+     * Runs Geocoder lookups, which block on the network for each address.
+     * Kept apart from {@link #worker} so a crawl cannot hold up parsing.
+     */
+    private static final ExecutorService geocoder = Executors.newFixedThreadPool(4, r -> {
+        Thread thread = new Thread(r, "Geocoder-" + geocoderCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Futures() {
+    }
+
+    /**
+     * @return The executor handlers run their CPU and disk work on
+     */
+    public static Executor worker() {
+        return worker;
+    }
+
+    /**
+     * @return The executor for blocking Geocoder lookups
+     */
+    public static Executor geocoder() {
+        return geocoder;
+    }
+
+    /**
+     * Cancels upstream once dependent fails, e.g. because it was cancelled or
+     * timed out, so work that only fed dependent stops. CompletableFuture does
+     * not pass cancellation back to the stages a future was derived from.
+     *
+     * @return The dependent future
+     */
+    public static <T> CompletableFuture<T> cancelOnFailure(CompletableFuture<T> dependent, Future<?> upstream) {
+        dependent.whenComplete((value, error) -> {
+            if (error != null) upstream.cancel(false);
+        });
+        return dependent;
+    }
+
+    /**
+     * Fails a future with a {@link TimeoutException} if it has not completed in time.
+     * The future itself is completed, so work chained on it sees the timeout.
+     *
+     * @return The same future
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        if (future.isDone()) return future;
+        ScheduledFuture<?> task = timer.schedule(
+                () -> future.completeExceptionally(new TimeoutException("Timed out after " + timeout + " " + unit)),
+                timeout, unit);
+        future.whenComplete((value, error) -> task.cancel(false));
+        return future;
+    }
+}
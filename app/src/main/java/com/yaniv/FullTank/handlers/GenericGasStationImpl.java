@@ -3,147 +3,81 @@ package com.yaniv.FullTank.handlers;
 import static android.content.ContentValues.TAG;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.yaniv.FullTank.dm.FuelPrices;
-import com.yaniv.FullTank.dm.GPS;
 import com.yaniv.FullTank.dm.GasStation;
-import com.yaniv.FullTank.R;
+import com.yaniv.FullTank.parsers.StationAsset;
 
-import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class GenericGasStationImpl implements IGasStationHandler{
-    Context context;
-    List<GasStation> gasStations;
+    private static final String STATIONS_ASSET = "stations.bin";
+    private static final long PRICES_TIMEOUT_SECONDS = 20;
 
-    public GenericGasStationImpl(Context context) {
+    Context context;
+    /**
+     * Regulated prices from the Ten payload, read by {@link APIGasStationImpl}'s
+     * parse in the same refresh, so the payload is downloaded once
+     */
+    private final CompletableFuture<FuelPrices> regulatedPrices;
+    /** Cleared when the stations could not be read, or were read without their regulated prices */
+    private volatile boolean complete = true;
+
+    public GenericGasStationImpl(Context context, CompletableFuture<FuelPrices> regulatedPrices) {
         this.context = context;
-        this.gasStations = fetchGasStations(null, "json");
+        this.regulatedPrices = regulatedPrices;
     }
 
     @Override
-    public List<GasStation> fetchGasStations(String query, String type) {
-        if (type.equals("json")) {
-            this.gasStations = readFromJsonFile();
-        }
-        return this.gasStations;
+    public CompletableFuture<List<GasStation>> fetchGasStations() {
+        // The bundled stations are still worth showing without prices
+        // A copy, so timing out here does not complete the shared future
+        CompletableFuture<FuelPrices> prices = regulatedPrices.thenApply(regulated -> regulated);
+        return Futures.cancelOnFailure(Futures.withTimeout(prices, PRICES_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .exceptionally(e -> {
+                    Log.e(TAG, "Error getting regulated prices", e);
+                    complete = false;
+                    return new FuelPrices(0, 0, 0);
+                })
+                .thenApplyAsync(this::readFromAsset, Futures.worker()), prices);
     }
 
-    private GPS convertITMToWGS84(double x, double y) {
-        // Constants for ITM to WGS84 conversion
-        final double k0 = 1.0000067;
-        final double a = 6378137.0;
-        final double lon0 = 0.61443473225468920;  // 35.2045169444444 degrees
-        final double lat0 = 0.55386965463774187;  // 31.7343936111111 degrees
-        final double false_e = 219529.584;
-        final double false_n = 626907.390;
-
-        // Compute meridian arc
-        double y1 = y - false_n;
-        double x1 = x - false_e;
-
-        // Compute lat/lon
-        double lat = lat0 + (y1 / (a * k0));
-        double lon = lon0 + (x1 / (a * k0 * Math.cos(lat0)));
-
-        // Convert to degrees
-        lat = Math.toDegrees(lat);
-        lon = Math.toDegrees(lon);
-
-        return new GPS(lat, lon);
+    /**
+     * @return False if the last fetch fell back to no stations, or to stations without prices
+     */
+    @Override
+    public boolean isComplete() {
+        return complete;
     }
 
-    public List<GasStation> readFromJsonFile() {
+    /**
+     * Reads the bundled station list, precompiled at build time into {@value #STATIONS_ASSET}.
+     * The asset is stored uncompressed and memory mapped.
+     */
+    public List<GasStation> readFromAsset(FuelPrices genericPrices) {
         List<GasStation> stations = new ArrayList<>();
-        try {
-            // Read the JSON file from raw resources
-            InputStream is = context.getResources().openRawResource(R.raw.gasstations);
-            BufferedReader bfr = new BufferedReader(new InputStreamReader(is));
-            StringBuilder jsonContent = new StringBuilder();
-            String line;
-            while ((line = bfr.readLine()) != null) {
-                jsonContent.append(line);
-            }
-            bfr.close();
-
-            // Parse JSON
-            JsonObject jsonObject = new Gson().fromJson(jsonContent.toString(), JsonObject.class);
-            JsonArray stationsArray = jsonObject.getAsJsonArray("stations");
-            FuelPrices genericPrices = getDefaultPrices();
-            int id = 2000;
-            for (JsonElement element : stationsArray) {
-                JsonObject station = element.getAsJsonObject();
-
-                String address = station.get("כתובת").getAsString();
-                String company = station.get("חברה").getAsString();
-
-                // Parse ITM coordinates
-                try {
-                    double x = Double.parseDouble(station.get("X").getAsString().split("\\.")[0]);
-                    double y = Double.parseDouble(station.get("Y").getAsString().split("\\.")[0]);
-
-                    // Convert ITM to WGS84 (GPS)
-                    GPS coordinates = convertITMToWGS84(x, y);
-
-                    GasStation gasStation = new GasStation(
-                            id++,
-                            address,
-                            company,
-                            coordinates,
-                            null, // No opening hours in the data
-                            genericPrices, // No prices in the data
-                            false // Set isFromApi to false for generic stations
-                    );
-
-                    stations.add(gasStation);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error parsing coordinates for station: " + address);
-                }
-            }
-
-            Log.d(TAG, "Total stations loaded from JSON: " + stations.size());
-
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(STATIONS_ASSET);
+             FileInputStream input = descriptor.createInputStream()) {
+            ByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+            stations = StationAsset.read(buffer, genericPrices);
+            Log.d(TAG, "Total stations loaded from asset: " + stations.size());
         } catch (IOException e) {
-            Log.e(TAG, "Error reading JSON file: ", e);
+            Log.e(TAG, "Error reading station asset: ", e);
+            complete = false;
         } catch (Exception e) {
-            Log.e(TAG, "Error parsing JSON: ", e);
+            Log.e(TAG, "Error parsing station asset: ", e);
+            complete = false;
         }
-
         return stations;
     }
-
-    public FuelPrices getDefaultPrices() {
-        FuelPrices defaultPrices = new FuelPrices(0,0,0);
-        String response = IGasStationHandler.sendHTTPRequest("https://10ten.co.il/website_api/website/1.0/generalDeclaration");
-        JsonObject jsonObject = com.google.gson.JsonParser.parseString(response).getAsJsonObject();
-        JsonObject data = jsonObject.getAsJsonObject("data");
-
-        // Get regulated prices from the response
-        if (data.has("fuel_typesArr")) {
-            JsonArray fuelTypesArr = data.getAsJsonArray("fuel_typesArr");
-            for (JsonElement fuelElement : fuelTypesArr) {
-                JsonObject fuelType = fuelElement.getAsJsonObject();
-                String code = fuelType.get("code").getAsString();
-                if (code.equals("5") && fuelType.has("regulated_price_self_service")) { // Petrol 95
-                    defaultPrices.setPetrol_95(fuelType.get("regulated_price_self_service").getAsDouble());
-                } else if (code.equals("0") && fuelType.has("regulated_price_self_service")) { // Diesel
-                    defaultPrices.setDiesel(fuelType.get("regulated_price_self_service").getAsDouble());
-                }
-            }
-        }
-        return defaultPrices;
-    }
-
-    public List<GasStation> getStations() {
-        return gasStations;
-    }
 }
@@ -0,0 +1,396 @@
+package com.yaniv.FullTank.handlers;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Fetches the sources' pages, so that one refresh downloads each URL once.
+ * Concurrent requests for the same URL share a single call, and responses are
+ * kept in memory for {@link #TTL_MS}, keyed by URL. Beyond that the shared
+ * {@link NetworkClient}'s HTTP cache keeps them on disk and revalidates them,
+ * and a {@link ParseCache} skips parsing a body identical to the one it last parsed.
+ * Each caller bounds the body it accepts, so a source that misbehaves cannot
+ * make the app buffer an arbitrarily large response.
+ * A source read by one parser only can instead be {@link #stream streamed},
+ * parsed as it arrives without holding the body in memory.
+ */
+public class HttpFetcher {
+    private static final String TAG = "HttpFetcher";
+    /** How long a response is served without asking the server again */
+    private static final long TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long MAX_MEMORY_BYTES = 4L << 20;
+
+    private static final HttpFetcher instance = new HttpFetcher();
+
+    /**
+     * A successful response body.
+     */
+    public static class Body {
+        private final byte[] bytes;
+        private final Charset charset;
+        /** Wall clock time it was fetched */
+        private final long fetchedAt;
+        /** SHA-256 of the bytes */
+        private final byte[] digest;
+
+        Body(byte[] bytes, Charset charset, long fetchedAt) throws NoSuchAlgorithmException {
+            this.bytes = bytes;
+            this.charset = charset;
+            this.fetchedAt = fetchedAt;
+            this.digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public String string() {
+            return new String(bytes, charset);
+        }
+
+        /**
+         * @return A reader over the body, for streaming parsers
+         */
+        public Reader reader() {
+            return new InputStreamReader(new ByteArrayInputStream(bytes), charset);
+        }
+    }
+
+    /**
+     * Parses a body of one source.
+     */
+    public interface BodyParser<T> {
+        T parse(Reader body) throws IOException;
+    }
+
+    /**
+     * The last result parsed from one source, reused while the body's hash is
+     * unchanged, so it is not parsed again. That covers a body served from
+     * memory, from the HTTP cache fresh or after a 304, and a source resending
+     * the same content without validators.
+     */
+    public static class ParseCache<T> {
+        private byte[] digest;
+        private T value;
+
+        public synchronized T parse(Body body, BodyParser<T> parser) throws IOException {
+            if (value != null && MessageDigest.isEqual(body.digest, digest)) {
+                Log.d(TAG, "Unchanged source, parse skipped");
+                return value;
+            }
+            try (Reader reader = body.reader()) {
+                value = parser.parse(reader);
+            }
+            digest = body.digest;
+            return value;
+        }
+    }
+
+    /**
+     * A download shared by every caller waiting for its URL
+     */
+    private static class Download {
+        final CompletableFuture<Body> body = new CompletableFuture<>();
+        /** Set once enqueued */
+        Call call;
+        /** Callers whose futures are not cancelled */
+        int waiters;
+        /** Largest body any caller accepts; the body is read up to it */
+        long maxBytes;
+    }
+
+    /** Guarded by this */
+    private final Map<String, Download> inFlight = new HashMap<>();
+    /** Least recently used first */
+    private final LinkedHashMap<String, Body> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    public static HttpFetcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets a URL's body from the cache, or downloads it, joining a download
+     * already in progress for the same URL.
+     * Failed responses are not cached.
+     * Each caller gets its own future; cancelling it cancels the HTTP call once
+     * no other caller is waiting for the URL.
+     *
+     * @param maxBytes Largest body accepted; a larger one fails the future without being read whole
+     */
+    public CompletableFuture<Body> fetch(String url, long maxBytes) {
+        Download download;
+        boolean created = false;
+        synchronized (this) {
+            Body cached = fromMemory(url);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached).thenApply(body -> checkSize(body, maxBytes));
+            }
+            download = inFlight.get(url);
+            if (download == null) {
+                download = new Download();
+                inFlight.put(url, download);
+                created = true;
+            }
+            download.waiters++;
+            download.maxBytes = Math.max(download.maxBytes, maxBytes);
+        }
+        // Read up to the largest bound of all callers, so check against this caller's own
+        CompletableFuture<Body> waiter = download.body.thenApply(body -> checkSize(body, maxBytes));
+        Download shared = download;
+        waiter.whenComplete((body, error) -> {
+            if (waiter.isCancelled()) release(url, shared);
+        });
+        if (created) {
+            download.body.whenComplete((body, error) -> {
+                synchronized (this) {
+                    inFlight.remove(url, shared);
+                }
+            });
+            download(url, download);
+        }
+        return waiter;
+    }
+
+    /**
+     * Drops a cancelled caller, cancelling the call when it was the last one
+     */
+    private void release(String url, Download download) {
+        Call call;
+        synchronized (this) {
+            if (--download.waiters > 0 || download.body.isDone()) return;
+            inFlight.remove(url, download);
+            call = download.call;
+        }
+        download.body.cancel(false);
+        if (call != null) {
+            call.cancel();
+            Log.d(TAG, "Cancelled " + url);
+        }
+    }
+
+    private static Body checkSize(Body body, long maxBytes) {
+        if (body.bytes.length > maxBytes) {
+            throw new CompletionException(tooLarge(maxBytes));
+        }
+        return body;
+    }
+
+    private static IOException tooLarge(long maxBytes) {
+        return new IOException("Response body larger than " + maxBytes + " bytes");
+    }
+
+    /**
+     * Downloads a URL and parses the body as it arrives, for a single caller: the
+     * body is never held whole in memory, shared with other callers or kept in
+     * memory afterwards. The HTTP cache still stores and revalidates it.
+     * The parser runs on the OkHttp thread reading the response. A failed read
+     * fails the future even if the parser swallowed the error.
+     * Cancelling the returned future cancels the call.
+     *
+     * @param maxBytes Largest body accepted; reading more fails the parse
+     */
+    public <T> CompletableFuture<T> stream(String url, long maxBytes, BodyParser<T> parser) {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        Call call = NetworkClient.get().newCall(request);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) call.cancel();
+        });
+        call.enqueue(new Callback() {
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                    if (!response.isSuccessful() || responseBody == null) {
+                        future.completeExceptionally(new IOException("Request failed: " + response.code()));
+                        return;
+                    }
+                    if (responseBody.contentLength() > maxBytes) {
+                        throw tooLarge(maxBytes);
+                    }
+                    MediaType type = responseBody.contentType();
+                    Charset charset = type == null ? null : type.charset();
+                    BodyStream input = new BodyStream(responseBody.byteStream(), maxBytes);
+                    T value;
+                    try (Reader reader = new InputStreamReader(input,
+                            charset == null ? StandardCharsets.UTF_8 : charset)) {
+                        value = parser.parse(reader);
+                    }
+                    input.checkRead();
+                    future.complete(value);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * A response stream that fails once it has read more than its limit, and
+     * remembers why it failed
+     */
+    private static class BodyStream extends FilterInputStream {
+        private final long maxBytes;
+        private long count;
+        private IOException error;
+
+        BodyStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (error != null) throw error;
+            int read;
+            try {
+                read = super.read(b, off, len);
+            } catch (IOException e) {
+                error = e;
+                throw e;
+            }
+            if (read > 0) {
+                count += read;
+                if (count > maxBytes) {
+                    error = tooLarge(maxBytes);
+                    throw error;
+                }
+            }
+            return read;
+        }
+
+        /**
+         * @throws IOException The error a read failed with, if any
+         */
+        void checkRead() throws IOException {
+            if (error != null) throw error;
+        }
+    }
+
+    private synchronized long maxBytes(Download download) {
+        return download.maxBytes;
+    }
+
+    /**
+     * Reads a body no caller accepts more of than its limit, failing as soon as more
+     * arrive. The limit is looked up as the body comes in, since a caller with a
+     * larger one may join while it is read.
+     */
+    private byte[] readBounded(ResponseBody responseBody, Download download) throws IOException {
+        if (responseBody.contentLength() > maxBytes(download)) {
+            throw tooLarge(maxBytes(download));
+        }
+        BufferedSource source = responseBody.source();
+        Buffer buffer = source.getBuffer();
+        // Each request of one more byte reads at most a segment
+        while (source.request(buffer.size() + 1)) {
+            long maxBytes = maxBytes(download);
+            if (buffer.size() > maxBytes) {
+                throw tooLarge(maxBytes);
+            }
+        }
+        return buffer.readByteArray();
+    }
+
+    private void download(String url, Download download) {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        Call call = NetworkClient.get().newCall(request);
+        synchronized (this) {
+            // Every caller may have cancelled already
+            if (download.body.isDone()) return;
+            download.call = call;
+        }
+        CompletableFuture<Body> future = download.body;
+        call.enqueue(new Callback() {
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                    if (!response.isSuccessful() || responseBody == null) {
+                        future.completeExceptionally(new IOException("Request failed: " + response.code()));
+                        return;
+                    }
+                    MediaType type = responseBody.contentType();
+                    Charset charset = type == null ? null : type.charset();
+                    Body body = new Body(readBounded(responseBody, download), charset == null ? StandardCharsets.UTF_8 : charset,
+                            System.currentTimeMillis());
+                    toMemory(url, body);
+                    future.complete(body);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private static boolean isFresh(Body body) {
+        long age = System.currentTimeMillis() - body.fetchedAt;
+        return age >= 0 && age < TTL_MS;
+    }
+
+    private synchronized Body fromMemory(String url) {
+        Body body = memory.get(url);
+        if (body == null) return null;
+        if (isFresh(body)) return body;
+        memory.remove(url);
+        memoryBytes -= body.bytes.length;
+        return null;
+    }
+
+    private synchronized void toMemory(String url, Body body) {
+        if (body.bytes.length > MAX_MEMORY_BYTES) return;
+        Body previous = memory.put(url, body);
+        if (previous != null) {
+            memoryBytes -= previous.bytes.length;
+        }
+        memoryBytes += body.bytes.length;
+        while (memoryBytes > MAX_MEMORY_BYTES) {
+            Map.Entry<String, Body> eldest = memory.entrySet().iterator().next();
+            memoryBytes -= eldest.getValue().bytes.length;
+            memory.remove(eldest.getKey());
+        }
+    }
+}
@@ -1,57 +1,48 @@
 package com.yaniv.FullTank.handlers;
 
-import static android.content.ContentValues.TAG;
-
-import android.util.Log;
-
-import androidx.annotation.NonNull;
-
 import com.yaniv.FullTank.dm.GasStation;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-
+/**
+ * A source of stations.
+ * Creating a handler does no I/O; {@link #fetchGasStations()} starts the work
+ * and never blocks the calling thread.
+ */
 public interface IGasStationHandler {
-    List<GasStation> fetchGasStations(String query, String type);
-
-    static String sendHTTPRequest(String query) {
-        // Making a GET request with OkHttp
-        OkHttpClient httpClient = new OkHttpClient.Builder().build();
-        Request request = new Request.Builder()
-                .url(query)
-                .build();
-        Call call = httpClient.newCall(request);
-        CompletableFuture<String> future = new CompletableFuture<>();
-        call.enqueue(new Callback() {
-            public void onResponse(@NonNull Call call, @NonNull Response response) {
-                try {
-                    if (response.isSuccessful()) {
-                        assert response.body() != null;
-                        future.complete(response.body().string());
-                    } else {
-                        future.completeExceptionally(new IOException("Request failed: " + response.code()));
-                    }
-                } catch (IOException e) {
-                    future.completeExceptionally(e);
-                }
-            }
+    /**
+     * Starts fetching the source's stations.
+     * Cancelling the returned future (or failing it, e.g. with
+     * {@link Futures#withTimeout}) stops the work still ahead of it.
+     */
+    CompletableFuture<List<GasStation>> fetchGasStations();
+
+    /**
+     * @return Whether the last fetch returned everything the source has; false when it
+     * settled for part of it, e.g. the pages read before a timeout
+     */
+    default boolean isComplete() {
+        return true;
+    }
 
-            public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                future.completeExceptionally(e);
+    /**
+     * Fetches a URL through {@link HttpFetcher} and parses the body as a stream
+     * on {@link Futures#worker()}, unless the body is the one the cache last parsed.
+     * Cancelling or failing the returned future cancels the request.
+     *
+     * @param maxBytes Largest body the source is expected to send
+     */
+    static <T> CompletableFuture<T> sendHTTPRequest(String query, long maxBytes, HttpFetcher.ParseCache<T> parseCache,
+                                                    HttpFetcher.BodyParser<T> parser) {
+        CompletableFuture<HttpFetcher.Body> fetched = HttpFetcher.getInstance().fetch(query, maxBytes);
+        return Futures.cancelOnFailure(fetched.thenApplyAsync(body -> {
+            try {
+                return parseCache.parse(body, parser);
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
-        });
-        try {
-            return future.get();
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting HTTP response", e);
-        }
-        return "";
+        }, Futures.worker()), fetched);
     }
 }
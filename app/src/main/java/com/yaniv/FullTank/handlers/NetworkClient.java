@@ -0,0 +1,76 @@
+package com.yaniv.FullTank.handlers;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+/**
+ * The process wide OkHttp client. Sharing one client shares its connection
+ * pool, dispatcher threads and on-disk HTTP cache between all requests.
+ * Cached responses are revalidated with If-None-Match / If-Modified-Since once
+ * stale, so an unchanged source answers 304 instead of resending its body.
+ * Responses that carry no caching headers are cached for {@link #DEFAULT_MAX_AGE_SECONDS}.
+ */
+public final class NetworkClient {
+    private static final long CACHE_BYTES = 20L << 20;
+    private static final String CACHE_DIR = "http";
+    private static final int MAX_REQUESTS = 16;
+    /** Keeps the crawler from opening many parallel requests against one site */
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+    private static final long DEFAULT_MAX_AGE_SECONDS = 600;
+
+    private static File cacheDir;
+    private static OkHttpClient client;
+
+    private NetworkClient() {
+    }
+
+    /**
+     * Enables the HTTP cache, in the app's cache directory.
+     * Only has an effect before the client is first used.
+     */
+    public static synchronized void init(Context context) {
+        if (cacheDir == null) {
+            cacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        }
+    }
+
+    public static synchronized OkHttpClient get() {
+        if (client == null) {
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(MAX_REQUESTS);
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+            OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .connectTimeout(10, TimeUnit.SECONDS)
+                    .readTimeout(20, TimeUnit.SECONDS)
+                    .writeTimeout(20, TimeUnit.SECONDS)
+                    .callTimeout(60, TimeUnit.SECONDS)
+                    .addNetworkInterceptor(chain -> withDefaultMaxAge(chain.proceed(chain.request())));
+            if (cacheDir != null) {
+                builder.cache(new Cache(cacheDir, CACHE_BYTES));
+            }
+            client = builder.build();
+        }
+        return client;
+    }
+
+    /**
+     * Lets responses without caching headers be cached for a while
+     */
+    private static Response withDefaultMaxAge(Response response) {
+        if (!response.isSuccessful() || response.header("Cache-Control") != null
+                || response.header("Expires") != null) {
+            return response;
+        }
+        return response.newBuilder()
+                .header("Cache-Control", "max-age=" + DEFAULT_MAX_AGE_SECONDS)
+                .build();
+    }
+}
@@ -8,22 +8,38 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.yaniv.FullTank.dao.GenericFirebaseImpl;
 import com.yaniv.FullTank.dao.IFirebaseDao;
+import com.yaniv.FullTank.dm.FuelType;
+import com.yaniv.FullTank.dm.GPS;
 import com.yaniv.FullTank.dm.GasStation;
 import com.yaniv.FullTank.handlers.APIGasStationImpl;
 import com.yaniv.FullTank.handlers.CrawlingGasStationImpl;
+import com.yaniv.FullTank.handlers.Futures;
 import com.yaniv.FullTank.handlers.GenericGasStationImpl;
+import com.yaniv.FullTank.handlers.IGasStationHandler;
+import com.yaniv.FullTank.handlers.NetworkClient;
+import com.yaniv.FullTank.index.StationStore;
+import com.yaniv.FullTank.query.StationQueryEngine;
+import com.yaniv.FullTank.query.StationResults;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class GasStationDataManager {
     private static final String TAG = "GasStationDataManager";
+    private static final long API_TIMEOUT_SECONDS = 30;
+    /** The crawler fetches and geocodes a page per station, then settles for the pages it has */
+    private static final long CRAWL_TIMEOUT_SECONDS = 180;
     private final Context context;
     private final IFirebaseDao firebaseDao;
-    private List<GasStation> allGasStations = new ArrayList<>();
+    /** Current snapshot; replaced as a whole when new data loads */
+    private volatile StationQueryEngine engine = StationQueryEngine.empty();
     private final DataUpdateCallback callback;
+    /** Sources of the latest refresh; cancelled when a newer one starts */
+    private volatile List<CompletableFuture<List<GasStation>>> refresh = Collections.emptyList();
 
     public interface DataUpdateCallback {
         void onDataLoaded(List<GasStation> stations);
@@ -35,6 +51,7 @@ public class GasStationDataManager {
         this.context = context;
         this.callback = callback;
         this.firebaseDao = new GenericFirebaseImpl();
+        NetworkClient.init(context);
     }
 
     public void loadGasStations() {
@@ -56,7 +73,7 @@ public class GasStationDataManager {
                     // Data is outdated, update from handlers
                     Log.d(TAG, "Data is outdated, updating from handlers...");
                     callback.onLoadingStarted("Updating gas station data...");
-                    new Thread(this::updateFromHandlers).start();
+                    updateFromHandlers();
                 } else {
                     // Data is current, just load from Firebase
                     loadFromFirebase();
@@ -69,61 +86,87 @@ public class GasStationDataManager {
         });
     }
 
+    /**
+     * Fetches every source concurrently and publishes their stations together.
+     * Nothing here blocks: each source runs under its own timeout and a newer
+     * refresh cancels the sources of this one.
+     * Only a refresh in which every source returned all its stations is saved to
+     * Firebase; otherwise the stations are shown but the stored month is left
+     * stale, so the next launch tries again.
+     */
     private void updateFromHandlers() {
-        try {
-            // Initialize gas station handlers
-            String tenAPI = "https://10ten.co.il/website_api/website/1.0/generalDeclaration";
-            String mikaCrawling = "https://mika.org.il/%D7%9B%D7%9C-%D7%94%D7%9E%D7%AA%D7%97%D7%9E%D7%99%D7%9D/";
-            
-            // Create handlers in parallel
-            CompletableFuture<List<GasStation>> tenFuture = CompletableFuture.supplyAsync(() -> {
-                APIGasStationImpl worker = new APIGasStationImpl(tenAPI, "ten");
-                return worker.getStations();
-            });
-
-            CompletableFuture<List<GasStation>> mikaFuture = CompletableFuture.supplyAsync(() -> {
-                CrawlingGasStationImpl worker = new CrawlingGasStationImpl(mikaCrawling, "mika", context);
-                return worker.getStations();
-            });
-
-            CompletableFuture<List<GasStation>> genericFuture = CompletableFuture.supplyAsync(() -> {
-                GenericGasStationImpl worker = new GenericGasStationImpl(context);
-                return worker.getStations();
-            });
-
-            // Wait for all futures to complete
-            CompletableFuture.allOf(tenFuture, mikaFuture, genericFuture).thenAccept(v -> {
-                // Combine all stations
-                List<GasStation> allStations = new ArrayList<>();
-                try {
-                    allStations.addAll(tenFuture.get());
-                    allStations.addAll(mikaFuture.get());
-                    allStations.addAll(genericFuture.get());
-
-                    // Save to Firebase
-                    Log.d(TAG, "Saving " + allStations.size() + " stations to Firebase");
-                    firebaseDao.saveToDatabase(allStations);
-
-                    allGasStations = allStations;
-                    callback.onDataLoaded(allGasStations);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error combining station data", e);
-                    callback.onDataLoadFailed("Error updating stations");
-                }
-            });
+        // Initialize gas station handlers; they do no I/O until fetched
+        String tenAPI = "https://10ten.co.il/website_api/website/1.0/generalDeclaration";
+        String mikaCrawling = "https://mika.org.il/%D7%9B%D7%9C-%D7%94%D7%9E%D7%AA%D7%97%D7%9E%D7%99%D7%9D/";
+
+        APIGasStationImpl ten = new APIGasStationImpl(tenAPI, "ten");
+        List<IGasStationHandler> handlers = new ArrayList<>();
+        handlers.add(ten);
+        handlers.add(new CrawlingGasStationImpl(mikaCrawling, "mika", context, CRAWL_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // The bundled stations take their regulated prices from the Ten payload
+        handlers.add(new GenericGasStationImpl(context, ten.getRegulatedPrices()));
+
+        List<CompletableFuture<List<GasStation>>> started = new ArrayList<>();
+        started.add(start(handlers.get(0), API_TIMEOUT_SECONDS));
+        // The crawler stops itself; this only catches a listing that never arrives
+        started.add(start(handlers.get(1), CRAWL_TIMEOUT_SECONDS + API_TIMEOUT_SECONDS));
+        started.add(start(handlers.get(2), API_TIMEOUT_SECONDS));
+
+        List<CompletableFuture<List<GasStation>>> previous = refresh;
+        refresh = started;
+        for (CompletableFuture<List<GasStation>> source : previous) {
+            source.cancel(false);
+        }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error updating from handlers", e);
-            callback.onDataLoadFailed("Error updating stations");
+        // A failed or timed out source contributes no stations
+        List<CompletableFuture<List<GasStation>>> sources = new ArrayList<>();
+        for (CompletableFuture<List<GasStation>> source : started) {
+            sources.add(source.exceptionally(e -> {
+                Log.e(TAG, "Error fetching stations", e);
+                return Collections.emptyList();
+            }));
         }
+
+        CompletableFuture.allOf(sources.toArray(new CompletableFuture[0])).thenRunAsync(() -> {
+            if (refresh != started) return; // superseded by a newer refresh
+
+            // Combine all stations; every source is complete, join does not wait
+            List<GasStation> allStations = new ArrayList<>();
+            boolean complete = true;
+            for (int i = 0; i < sources.size(); i++) {
+                allStations.addAll(sources.get(i).join());
+                complete &= !started.get(i).isCompletedExceptionally() && handlers.get(i).isComplete();
+            }
+
+            // Save to Firebase, which also marks this month as updated
+            if (complete) {
+                Log.d(TAG, "Saving " + allStations.size() + " stations to Firebase");
+                firebaseDao.saveToDatabase(allStations);
+            } else {
+                Log.w(TAG, "Some sources failed or were partial, not saving " + allStations.size() + " stations");
+            }
+
+            publish(new StationQueryEngine(allStations));
+        }, Futures.worker()).exceptionally(e -> {
+            Log.e(TAG, "Error combining station data", e);
+            callback.onDataLoadFailed("Error updating stations");
+            return null;
+        });
+    }
+
+    /**
+     * Starts one handler, failing its future if it takes longer than the timeout
+     */
+    private static CompletableFuture<List<GasStation>> start(IGasStationHandler handler, long timeoutSeconds) {
+        return Futures.withTimeout(handler.fetchGasStations(), timeoutSeconds, TimeUnit.SECONDS);
     }
 
     private void loadFromFirebase() {
         new Thread(() -> {
             try {
-                allGasStations = firebaseDao.readFromDatabase();
-                Log.d(TAG, "Loaded " + allGasStations.size() + " stations from Firebase");
-                callback.onDataLoaded(allGasStations);
+                List<GasStation> stations = firebaseDao.readFromDatabase();
+                Log.d(TAG, "Loaded " + stations.size() + " stations from Firebase");
+                publish(new StationQueryEngine(stations));
             } catch (Exception e) {
                 Log.e(TAG, "Error loading from Firebase", e);
                 callback.onDataLoadFailed("Error loading stations");
@@ -131,68 +174,53 @@ public class GasStationDataManager {
         }).start();
     }
 
-    public List<GasStation> filterStations(String query, Location userLocation, boolean showingDiesel, boolean sortByPrice) {
-        if (query == null || query.trim().isEmpty()) {
-            return allGasStations;
-        }
-
-        String lowercaseQuery = query.toLowerCase().trim();
-        List<GasStation> matchingStations = new ArrayList<>();
-        
-        for (GasStation station : allGasStations) {
-            if (station.getAddress().toLowerCase().contains(lowercaseQuery)) {
-                float distance = 0;
-                if (userLocation != null) {
-                    float[] results = new float[1];
-                    Location.distanceBetween(
-                        userLocation.getLatitude(), userLocation.getLongitude(),
-                        station.getGps().getLat(), station.getGps().getLng(),
-                        results
-                    );
-                    distance = results[0];
-                }
-                station.setDistance(distance);
-                matchingStations.add(station);
+    /**
+     * Makes a new snapshot current, then renders its marker bitmaps on
+     * {@link Futures#worker()} so later paints and the fuel toggle hit the cache.
+     * Warming stops once a newer snapshot is published.
+     */
+    private void publish(StationQueryEngine snapshot) {
+        engine = snapshot;
+        callback.onDataLoaded(getAllStations());
+        Futures.worker().execute(() -> {
+            try {
+                MarkerUtils.prewarmMarkers(context, snapshot.getStore(), () -> engine != snapshot);
+            } catch (Exception e) {
+                Log.e(TAG, "Error pre-rendering markers", e);
             }
-        }
-
-        sortStations(matchingStations, userLocation, showingDiesel, sortByPrice);
-        return matchingStations;
+        });
     }
 
-    public List<GasStation> getNearbyStations(Location userLocation, boolean showingDiesel, boolean sortByPrice, float maxDistance) {
-        List<GasStation> nearbyStations = new ArrayList<>();
-        
-        for (GasStation station : allGasStations) {
-            float[] results = new float[1];
-            Location.distanceBetween(
-                userLocation.getLatitude(), userLocation.getLongitude(),
-                station.getGps().getLat(), station.getGps().getLng(),
-                results
-            );
-            if (results[0] <= maxDistance) {
-                station.setDistance(results[0]);
-                nearbyStations.add(station);
-            }
-        }
+    public StationResults filterStations(String query, Location userLocation, boolean showingDiesel, boolean sortByPrice) {
+        return engine.filterStations(query, toGps(userLocation), FuelType.of(showingDiesel), sortByPrice);
+    }
 
-        sortStations(nearbyStations, userLocation, showingDiesel, sortByPrice);
-        return nearbyStations.subList(0, Math.min(20, nearbyStations.size()));
+    public StationResults getNearbyStations(Location userLocation, boolean showingDiesel, boolean sortByPrice, float maxDistance) {
+        return engine.getNearbyStations(toGps(userLocation), FuelType.of(showingDiesel), sortByPrice, maxDistance);
     }
 
-    private void sortStations(List<GasStation> stations, Location userLocation, boolean showingDiesel, boolean sortByPrice) {
-        if (sortByPrice) {
-            stations.sort((a, b) -> {
-                double priceA = showingDiesel ? a.getFuel_prices().getDiesel() : a.getFuel_prices().getPetrol_95();
-                double priceB = showingDiesel ? b.getFuel_prices().getDiesel() : b.getFuel_prices().getPetrol_95();
-                return Double.compare(priceA, priceB);
-            });
-        } else if (userLocation != null) {
-            stations.sort((a, b) -> Float.compare(a.getDistance(), b.getDistance()));
-        }
+    private static GPS toGps(Location location) {
+        return location == null ? null : new GPS(location.getLatitude(), location.getLongitude());
     }
 
+    /**
+     * @return All stations of the current snapshot; rows are materialized as they are read
+     */
     public List<GasStation> getAllStations() {
-        return allGasStations;
+        return engine.getAllStations();
+    }
+
+    /**
+     * @return The current snapshot; its store and indexes always belong together
+     */
+    public StationQueryEngine getQueryEngine() {
+        return engine;
+    }
+
+    /**
+     * @return The current snapshot's columnar store, for index-based scans that should not allocate
+     */
+    public StationStore getStationStore() {
+        return engine.getStore();
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
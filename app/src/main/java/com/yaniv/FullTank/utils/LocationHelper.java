@@ -4,9 +4,6 @@ import android.Manifest;
 import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
@@ -39,58 +36,7 @@ public class LocationHelper {
 
     private void setupLocationOverlay() {
         GpsMyLocationProvider provider = new GpsMyLocationProvider(context);
-        locationOverlay = new MyLocationNewOverlay(provider, map) {
-            @Override
-            public void draw(Canvas canvas, MapView mapView, boolean shadow) {
-                if (shadow) return;
-                
-                Location lastFix = getLastFix();
-                if (lastFix != null && mapView != null) {
-                    GeoPoint currentLocation = new GeoPoint(lastFix.getLatitude(), lastFix.getLongitude());
-                    android.graphics.Point screenCoords = new android.graphics.Point();
-                    mapView.getProjection().toPixels(currentLocation, screenCoords);
-
-                    // Draw accuracy circle
-                    if (lastFix.hasAccuracy()) {
-                        float accuracy = lastFix.getAccuracy();
-                        // Calculate a point at the accuracy distance (east)
-                        double earthRadius = 6371000; // Earth's radius in meters
-                        double lat = Math.toRadians(lastFix.getLatitude());
-                        double lon = Math.toRadians(lastFix.getLongitude());
-                        double angular = accuracy / earthRadius;
-                        
-                        // Calculate point at accuracy distance to the east
-                        double eastLon = lon + angular / Math.cos(lat);
-                        
-                        GeoPoint edgePoint = new GeoPoint(Math.toDegrees(lat), Math.toDegrees(eastLon));
-                        android.graphics.Point edgeScreenCoords = new android.graphics.Point();
-                        mapView.getProjection().toPixels(edgePoint, edgeScreenCoords);
-                        
-                        // Calculate radius in pixels
-                        float accuracyInPixels = Math.abs(edgeScreenCoords.x - screenCoords.x);
-
-                        Paint accuracyPaint = new Paint();
-                        accuracyPaint.setColor(Color.argb(40, 0, 0, 255));
-                        accuracyPaint.setStyle(Paint.Style.FILL);
-                        canvas.drawCircle(screenCoords.x, screenCoords.y, accuracyInPixels * 1.5f, accuracyPaint);
-                    }
-
-                    // Draw location dot
-                    Paint paint = new Paint();
-                    paint.setAntiAlias(true);
-                    
-                    // Outer circle (white border)
-                    paint.setColor(Color.WHITE);
-                    paint.setStyle(Paint.Style.FILL);
-                    canvas.drawCircle(screenCoords.x, screenCoords.y, 25, paint);
-                    
-                    // Inner circle (blue fill)
-                    paint.setColor(Color.rgb(0, 122, 255));
-                    paint.setStyle(Paint.Style.FILL);
-                    canvas.drawCircle(screenCoords.x, screenCoords.y, 20, paint);
-                }
-            }
-        };
+        locationOverlay = new UserLocationOverlay(provider, map);
         map.getOverlays().add(locationOverlay);
     }
 
@@ -0,0 +1,41 @@
+package com.yaniv.FullTank.utils;
+
+import android.location.Location;
+
+/**
+ * The user's current location, shared by everything that shows distances.
+ * Views read the latest fix when they draw instead of being handed every fix,
+ * and work that depends on the location (distance sorting, nearby searches) is
+ * only redone once the user has moved past {@link #MOVE_THRESHOLD_METERS}.
+ * Used from the main thread only.
+ */
+public class LocationState {
+    /** Movement that makes distances and nearby results worth recomputing */
+    public static final float MOVE_THRESHOLD_METERS = 50;
+
+    private Location current;
+    /** Fix the location-dependent results were last computed for */
+    private Location anchor;
+
+    /**
+     * @return The latest fix, or null if there is none yet
+     */
+    public Location get() {
+        return current;
+    }
+
+    /**
+     * Records a new fix.
+     * @return Whether it is the first fix or lies past the movement threshold
+     *         from the fix results were last computed for
+     */
+    public boolean update(Location fix) {
+        current = fix;
+        if (fix == null) return false;
+        if (anchor == null || anchor.distanceTo(fix) >= MOVE_THRESHOLD_METERS) {
+            anchor = fix;
+            return true;
+        }
+        return false;
+    }
+}
@@ -1,74 +1,401 @@
 package com.yaniv.FullTank.utils;
 
+import android.animation.ValueAnimator;
 import android.content.Context;
+import android.graphics.Point;
 import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.animation.DecelerateInterpolator;
 
+import com.yaniv.FullTank.dm.FuelType;
 import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.index.StationStore;
+import com.yaniv.FullTank.map.ClusterIndex;
+import com.yaniv.FullTank.map.MarkerSet;
+import com.yaniv.FullTank.query.StationQueryEngine;
+import com.yaniv.FullTank.query.StationResults;
 
+import org.osmdroid.events.DelayedMapListener;
+import org.osmdroid.events.MapListener;
+import org.osmdroid.events.ScrollEvent;
+import org.osmdroid.events.ZoomEvent;
+import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.Marker;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MapManager {
+    private static final String TAG = "MapManager";
+    /** Scroll and zoom events are coalesced for this long before markers are culled again */
+    private static final long VIEWPORT_UPDATE_DELAY_MS = 100;
+    /** Share of the visible span added on each side, so short pans need no update */
+    private static final double VIEWPORT_MARGIN = 0.25;
+    /** Duration of markers sliding out of their cluster after zooming in */
+    private static final long EXPAND_ANIMATION_MS = 250;
+    /** Zoom levels added when a cluster is tapped */
+    private static final double CLUSTER_TAP_ZOOM_STEP = 2;
+    /** Shortest time between two camera moves that follow location fixes */
+    private static final long CAMERA_FOLLOW_INTERVAL_MS = 3000;
+    /** Fixes closer than this to the map center don't move the camera */
+    private static final float CAMERA_FOLLOW_MIN_OFFSET_DP = 24;
+
     private final Context context;
     private final MapView map;
-    private final List<Marker> markers = new ArrayList<>();
-    private final Map<GeoPoint, Marker> markerMap = new HashMap<>();
+    private final GasStationDataManager dataManager;
+    /** Draws every station bubble in one pass */
+    private final StationOverlay stationOverlay;
+    /** Cluster badges on the map, keyed by zoom level and cell */
+    private final MarkerSet<ClusterIndex.Cluster, Marker> clusterMarkers;
     private boolean showingDiesel = false;
     private boolean showingGeneric = true;
+    private final LocationState locationState;
+    /** When the camera last moved to follow a fix */
+    private long lastFollowMs;
+    private final Point followPixel = new Point();
+
+    // Viewport mode: only stations inside the visible area (plus margin) are drawn
+    private boolean viewportCulling = true;
+    /** Snapshot the shown rows belong to */
+    private StationQueryEngine shownEngine = StationQueryEngine.empty();
+    /** Ascending store rows last passed to updateMarkers, or null when every row is shown */
+    private int[] shownRows;
+    /** Whether each store row is shown, or null when every row is */
+    private boolean[] shownMask;
+    /** Backs shownMask; reused across updates until the snapshot changes */
+    private boolean[] rowMask;
+    private StationStore rowMaskStore;
+    /** Rows currently set in rowMask, cleared before the next update sets its own */
+    private int[] rowMaskRows;
+    /** Area the current markers were culled to, or null if none yet */
+    private BoundingBox culledBox;
 
-    public MapManager(Context context, MapView map) {
+    // Clustering; filtered station sets are clustered on a worker thread
+    private final ExecutorService clusterExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, TAG));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /** Clusters of the shown stations, or null while they are being built */
+    private ClusterIndex clusterIndex;
+    /** Snapshot and rows the clusters were built for */
+    private StationQueryEngine clusteredEngine;
+    private int[] clusteredRows;
+    /** Bumped per cluster build; older builds are dropped */
+    private int clusterGeneration;
+    /** Zoom level the markers were last culled at */
+    private int culledZoom = -1;
+    /** Rows and cluster markers that appeared in the last {@link #applyMarkers} call */
+    private int[] addedRows = new int[0];
+    private List<Marker> addedClusters = new ArrayList<>();
+    private ValueAnimator expandAnimator;
+    /** Shared by every station, created on the first tap */
+    private MarkerUtils.StationInfoWindow infoWindow;
+
+    public MapManager(Context context, MapView map, GasStationDataManager dataManager, LocationState locationState) {
         this.context = context;
         this.map = map;
+        this.dataManager = dataManager;
+        this.locationState = locationState;
+        this.stationOverlay = new StationOverlay(new MarkerAtlas(style -> MarkerUtils.getMarkerBitmap(context, style)));
+        stationOverlay.setOnStationTapListener(row -> showStationInfoWindow(shownEngine.getStore().station(row)));
+        map.getOverlays().add(stationOverlay);
+        this.clusterMarkers = new MarkerSet<>(ClusterIndex.Cluster::getKey, new MarkerSet.Binder<ClusterIndex.Cluster, Marker>() {
+            @Override
+            public Marker create(ClusterIndex.Cluster cluster, long style) {
+                Marker marker = new Marker(MapManager.this.map);
+                marker.setPosition(new GeoPoint(cluster.getLat(), cluster.getLng()));
+                marker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_CENTER);
+                marker.setIcon(MarkerUtils.getClusterIcon(MapManager.this.context, cluster.getCount(),
+                        cluster.getCheapest(FuelType.of(showingDiesel))));
+                marker.setInfoWindow(null);
+                // Tapping a cluster zooms in on it
+                marker.setOnMarkerClickListener((m, mapView) -> {
+                    mapView.getController().animateTo(m.getPosition(),
+                            mapView.getZoomLevelDouble() + CLUSTER_TAP_ZOOM_STEP, 500L);
+                    return true;
+                });
+                return marker;
+            }
+
+            @Override
+            public void update(Marker marker, ClusterIndex.Cluster cluster, long style, boolean restyle) {
+                if (restyle) {
+                    marker.setPosition(new GeoPoint(cluster.getLat(), cluster.getLng()));
+                    marker.setIcon(MarkerUtils.getClusterIcon(MapManager.this.context, cluster.getCount(),
+                            cluster.getCheapest(FuelType.of(showingDiesel))));
+                }
+            }
+        });
+        map.addMapListener(new DelayedMapListener(new MapListener() {
+            @Override
+            public boolean onScroll(ScrollEvent event) {
+                // Panning within the margin keeps every needed marker
+                BoundingBox visible = MapManager.this.map.getBoundingBox();
+                if (culledBox == null || !contains(culledBox, visible)) {
+                    updateViewport();
+                }
+                return false;
+            }
+
+            @Override
+            public boolean onZoom(ZoomEvent event) {
+                updateViewport();
+                return false;
+            }
+        }, VIEWPORT_UPDATE_DELAY_MS));
+    }
+
+    /**
+     * Switches between markers for the visible area only and markers for every shown station
+     */
+    public void setViewportCulling(boolean viewportCulling) {
+        this.viewportCulling = viewportCulling;
+        updateViewport();
     }
 
     public void setShowingGeneric(boolean showGeneric) {
         this.showingGeneric = showGeneric;
     }
 
-    private List<GasStation> filterGenericStations(List<GasStation> stations) {
-        if (showingGeneric) {
-            return new ArrayList<>(stations);
-        }
-        List<GasStation> filteredStations = new ArrayList<>();
-        for (GasStation station : stations) {
-            if (station.isFromApi()) {
-                filteredStations.add(station);
+    /**
+     * Style of a cluster badge: member count, cheapest price in agorot and fuel type
+     */
+    private long styleOf(ClusterIndex.Cluster cluster) {
+        long cheapest = Math.round(cluster.getCheapest(FuelType.of(showingDiesel)) * 100);
+        return (long) cluster.getCount() << 32 | cheapest << 1 | (showingDiesel ? 1 : 0);
+    }
+
+    public void clearMarkers() {
+        map.getOverlays().removeAll(new HashSet<>(clusterMarkers.markers()));
+        clusterMarkers.clear();
+        stationOverlay.clear();
+        map.invalidate();
+    }
+
+    /**
+     * Shows the given stations. In viewport mode only those inside the visible area
+     * are drawn, and at low zoom levels nearby stations are collapsed into cluster badges.
+     * Results of an older snapshot are ignored; a refresh with the new one follows.
+     */
+    public void updateMarkers(StationResults stations) {
+        StationQueryEngine engine = dataManager.getQueryEngine();
+        StationStore store = engine.getStore();
+        if (stations.getStore() != store) return;
+        shownEngine = engine;
+        shownRows = null;
+        shownMask = null;
+        if (!stations.coversStore() || !showingGeneric) {
+            // The results carry their rows, so no station is looked up by id
+            int[] rows = new int[stations.size()];
+            int count = 0;
+            for (int i = 0; i < rows.length; i++) {
+                int row = stations.row(i);
+                if (showingGeneric || store.isFromApi(row)) {
+                    rows[count++] = row;
+                }
+            }
+            rows = Arrays.copyOf(rows, count);
+            Arrays.sort(rows);
+            if (rowMask == null || rowMaskStore != store) {
+                rowMask = new boolean[store.size()];
+                rowMaskStore = store;
+            } else if (rowMaskRows != null) {
+                for (int row : rowMaskRows) {
+                    rowMask[row] = false;
+                }
             }
+            for (int row : rows) {
+                rowMask[row] = true;
+            }
+            rowMaskRows = rows;
+            shownMask = rowMask;
+            shownRows = rows;
         }
-        return filteredStations;
+        updateClusters(engine);
+        updateViewport();
     }
 
-    public void clearMarkers() {
-        for (Marker marker : markers) {
-            map.getOverlays().remove(marker);
+    /**
+     * Points the clusters at the shown stations. Every station is clustered with the
+     * snapshot; any other set is clustered on the worker, and the viewport updates
+     * again once it is ready.
+     */
+    private void updateClusters(StationQueryEngine engine) {
+        if (engine == clusteredEngine && Arrays.equals(shownRows, clusteredRows)) {
+            return; // e.g. a location fix with the same results
         }
-        markers.clear();
-        markerMap.clear();
-        map.invalidate();
+        int generation = ++clusterGeneration;
+        clusteredEngine = engine;
+        clusteredRows = shownRows;
+        if (shownRows == null) {
+            clusterIndex = engine.getClusterIndex();
+            return;
+        }
+
+        clusterIndex = null;
+        int[] rows = shownRows;
+        clusterExecutor.execute(() -> {
+            try {
+                ClusterIndex built = ClusterIndex.build(engine.getStore(), rows);
+                mainHandler.post(() -> {
+                    if (generation == clusterGeneration) {
+                        clusterIndex = built;
+                        updateViewport();
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error clustering stations", e);
+            }
+        });
     }
 
-    public void addMarker(GasStation station, Location userLocation) {
-        Marker marker = MarkerUtils.createMarkerForStation(context, map, station, showingDiesel, userLocation);
-        markers.add(marker);
-        markerMap.put(marker.getPosition(), marker);
-        map.getOverlays().add(marker);
+    /**
+     * Re-culls the shown stations to the visible area and updates the overlay and cluster markers
+     */
+    private void updateViewport() {
+        StationStore store = shownEngine.getStore();
+        if (!viewportCulling) {
+            culledBox = null;
+            applyMarkers(shownRows != null ? shownRows : allRows(store.size()), new ArrayList<>());
+            return;
+        }
+        int zoom = (int) Math.floor(map.getZoomLevelDouble());
+        boolean clustered = zoom <= ClusterIndex.MAX_CLUSTER_ZOOM;
+        if (clustered && clusterIndex == null) {
+            return; // Keep the current markers until the clusters are ready
+        }
+
+        BoundingBox visible = map.getBoundingBox();
+        double latMargin = visible.getLatitudeSpan() * VIEWPORT_MARGIN;
+        double lngMargin = visible.getLongitudeSpanWithDateLine() * VIEWPORT_MARGIN;
+        culledBox = new BoundingBox(
+                Math.min(90, visible.getLatNorth() + latMargin),
+                Math.min(180, visible.getLonEast() + lngMargin),
+                Math.max(-90, visible.getLatSouth() - latMargin),
+                Math.max(-180, visible.getLonWest() - lngMargin));
+
+        int[] rowsInView;
+        List<ClusterIndex.Cluster> clustersInView = new ArrayList<>();
+        if (clustered) {
+            // Single-station cells are drawn as the station itself
+            List<ClusterIndex.Cluster> clusters = clusterIndex.clusters(zoom, culledBox.getLatSouth(),
+                    culledBox.getLonWest(), culledBox.getLatNorth(), culledBox.getLonEast());
+            rowsInView = new int[clusters.size()];
+            int count = 0;
+            for (ClusterIndex.Cluster cluster : clusters) {
+                if (cluster.getCount() == 1) {
+                    rowsInView[count++] = cluster.getRow();
+                } else {
+                    clustersInView.add(cluster);
+                }
+            }
+            rowsInView = Arrays.copyOf(rowsInView, count);
+        } else {
+            // Look the area up in the spatial index, then keep what the current query shows
+            int[] rows = shownEngine.getSpatialIndex().withinBox(culledBox.getLatSouth(), culledBox.getLonWest(),
+                    culledBox.getLatNorth(), culledBox.getLonEast());
+            int count = 0;
+            for (int row : rows) {
+                if (shownMask == null || shownMask[row]) {
+                    rows[count++] = row;
+                }
+            }
+            rowsInView = Arrays.copyOf(rows, count);
+        }
+
+        int previousZoom = culledZoom;
+        culledZoom = zoom;
+        boolean expanding = previousZoom >= 0 && zoom > previousZoom && previousZoom <= ClusterIndex.MAX_CLUSTER_ZOOM;
+        applyMarkers(rowsInView, clustersInView);
+        if (expanding && clusterIndex != null) {
+            expandFromClusters(previousZoom);
+        }
+    }
+
+    private static int[] allRows(int size) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) rows[i] = i;
+        return rows;
     }
 
-    public void updateMarkers(List<GasStation> stations, Location userLocation) {
-        clearMarkers();
-        List<GasStation> filteredStations = filterGenericStations(stations);
-        for (GasStation station : filteredStations) {
-            addMarker(station, userLocation);
+    private static boolean contains(BoundingBox outer, BoundingBox inner) {
+        return inner.getLatNorth() <= outer.getLatNorth() && inner.getLatSouth() >= outer.getLatSouth()
+                && inner.getLonEast() <= outer.getLonEast() && inner.getLonWest() >= outer.getLonWest();
+    }
+
+    /**
+     * Hands the stations to the overlay and reconciles the cluster markers
+     */
+    private void applyMarkers(int[] rows, List<ClusterIndex.Cluster> clusters) {
+        StationStore store = shownEngine.getStore();
+        addedRows = stationOverlay.setStations(store, shownEngine.getSpatialIndex(), rows, FuelType.of(showingDiesel));
+
+        MarkerSet.Changes<Marker> clusterChanges = clusterMarkers.update(clusters, this::styleOf);
+        if (!clusterChanges.getRemoved().isEmpty()) {
+            // A set keeps removeAll linear in the overlay count
+            map.getOverlays().removeAll(new HashSet<>(clusterChanges.getRemoved()));
+        }
+        addedClusters = clusterChanges.getAdded();
+        if (!addedClusters.isEmpty()) {
+            map.getOverlays().addAll(addedClusters);
         }
         map.invalidate();
     }
 
+    /**
+     * Slides stations and clusters that appeared after zooming in out of the cluster they belonged to
+     */
+    private void expandFromClusters(int previousZoom) {
+        if (expandAnimator != null) {
+            expandAnimator.end();
+        }
+        StationStore store = shownEngine.getStore();
+        boolean anyStation = false;
+        for (int row : addedRows) {
+            ClusterIndex.Cluster parent = clusterIndex.find(previousZoom, store.lat(row), store.lng(row));
+            if (parent == null || parent.getCount() == 1) continue;
+            stationOverlay.setOrigin(row, parent.getLat(), parent.getLng());
+            anyStation = true;
+        }
+        List<Marker> moving = new ArrayList<>();
+        List<GeoPoint> from = new ArrayList<>();
+        List<GeoPoint> to = new ArrayList<>();
+        for (Marker marker : addedClusters) {
+            GeoPoint target = marker.getPosition();
+            ClusterIndex.Cluster parent = clusterIndex.find(previousZoom, target.getLatitude(), target.getLongitude());
+            if (parent == null || parent.getCount() == 1) continue;
+            moving.add(marker);
+            from.add(new GeoPoint(parent.getLat(), parent.getLng()));
+            to.add(target);
+        }
+        if (moving.isEmpty() && !anyStation) return;
+
+        expandAnimator = ValueAnimator.ofFloat(0f, 1f);
+        expandAnimator.setDuration(EXPAND_ANIMATION_MS);
+        expandAnimator.setInterpolator(new DecelerateInterpolator());
+        expandAnimator.addUpdateListener(animation -> {
+            float t = (float) animation.getAnimatedValue();
+            stationOverlay.setProgress(t);
+            for (int i = 0; i < moving.size(); i++) {
+                GeoPoint start = from.get(i);
+                GeoPoint end = to.get(i);
+                moving.get(i).setPosition(new GeoPoint(
+                        start.getLatitude() + (end.getLatitude() - start.getLatitude()) * t,
+                        start.getLongitude() + (end.getLongitude() - start.getLongitude()) * t));
+            }
+            map.invalidate();
+        });
+        stationOverlay.setProgress(0f);
+        expandAnimator.start();
+    }
+
     public void setShowingDiesel(boolean showingDiesel) {
         this.showingDiesel = showingDiesel;
     }
@@ -77,11 +404,58 @@ public class MapManager {
         map.getController().animateTo(point, zoom, 1000L);
     }
 
+    /**
+     * Keeps the camera on the user's fixes. Runs at most once per
+     * {@link #CAMERA_FOLLOW_INTERVAL_MS}, never restarts a running animation
+     * and ignores fixes already near the center of the map.
+     */
+    public void followLocation(Location location) {
+        long now = SystemClock.elapsedRealtime();
+        if (map.isAnimating() || now - lastFollowMs < CAMERA_FOLLOW_INTERVAL_MS) return;
+
+        GeoPoint point = new GeoPoint(location.getLatitude(), location.getLongitude());
+        map.getProjection().toPixels(point, followPixel);
+        float dx = followPixel.x - map.getWidth() / 2f;
+        float dy = followPixel.y - map.getHeight() / 2f;
+        float minOffset = CAMERA_FOLLOW_MIN_OFFSET_DP * context.getResources().getDisplayMetrics().density;
+        if (dx * dx + dy * dy < minOffset * minOffset) return;
+
+        lastFollowMs = now;
+        animateToLocation(point, map.getZoomLevelDouble());
+    }
+
+    /**
+     * Opens the info window of a station above its price bubble
+     */
     public void showStationInfoWindow(GasStation station) {
-        GeoPoint stationPoint = new GeoPoint(station.getGps().getLat(), station.getGps().getLng());
-        Marker marker = markerMap.get(stationPoint);
-        if (marker != null) {
-            marker.showInfoWindow();
+        double price = showingDiesel ? station.getFuel_prices().getDiesel() : station.getFuel_prices().getPetrol_95();
+        int iconHeight = MarkerUtils.getMarkerBitmap(context, price, station.isFromApi()).getHeight();
+        if (infoWindow == null) {
+            infoWindow = new MarkerUtils.StationInfoWindow(context, map, locationState);
+        }
+        infoWindow.bind(station);
+        infoWindow.open(station, new GeoPoint(station.getGps().getLat(), station.getGps().getLng()), 0, -iconHeight);
+    }
+
+    /**
+     * Releases the station icon atlas under memory pressure
+     * @param level Level passed to {@link android.content.ComponentCallbacks2#onTrimMemory}
+     */
+    public void onTrimMemory(int level) {
+        stationOverlay.onTrimMemory(level);
+    }
+
+    /**
+     * Stops the clustering worker and detaches the info window; call when the activity is destroyed
+     */
+    public void release() {
+        clusterGeneration++;
+        clusterExecutor.shutdownNow();
+        if (expandAnimator != null) {
+            expandAnimator.cancel();
+        }
+        if (infoWindow != null) {
+            infoWindow.onDetach();
         }
     }
-} 
\ No newline at end of file
+}
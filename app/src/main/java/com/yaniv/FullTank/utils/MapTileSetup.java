@@ -0,0 +1,113 @@
+package com.yaniv.FullTank.utils;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.mapsforge.map.rendertheme.StreamRenderTheme;
+import org.mapsforge.map.rendertheme.XmlRenderTheme;
+import org.osmdroid.mapsforge.MapsForgeTileProvider;
+import org.osmdroid.mapsforge.MapsForgeTileSource;
+import org.osmdroid.tileprovider.modules.SqlTileWriter;
+import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
+import org.osmdroid.util.TileStates;
+import org.osmdroid.views.MapView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses where map tiles come from.
+ * When a mapsforge .map file (e.g. an extract covering Israel) is in the app's
+ * {@value #MAPS_DIR} folder, tiles are rendered on the device from it, cached in
+ * osmdroid's tile database and the map never uses the network. Otherwise the
+ * online MAPNIK tiles are used as before.
+ * The time until the first frame with every visible tile loaded is logged per
+ * source, so offline and online startup can be compared on a device.
+ */
+public class MapTileSetup {
+    private static final String TAG = "MapTileSetup";
+    /** Folder under the app's external (or internal) files dir holding .map files */
+    private static final String MAPS_DIR = "maps";
+    /** Optional render theme bundled in assets; the library's built-in theme otherwise */
+    private static final String RENDER_THEME_ASSET = "mapsforge/rendertheme.xml";
+
+    /**
+     * Sets the map's tile source: offline vector tiles if map files exist, MAPNIK otherwise
+     * @param activity Activity owning the map
+     * @param map The map view
+     * @param startMs {@link SystemClock#uptimeMillis()} when startup began, for the first frame log
+     * @return Whether the offline mode is used
+     */
+    public static boolean setup(Activity activity, MapView map, long startMs) {
+        File[] mapFiles = findMapFiles(activity);
+        if (mapFiles.length > 0) {
+            try {
+                MapsForgeTileSource.createInstance(activity.getApplication());
+                XmlRenderTheme theme = loadRenderTheme(activity);
+                MapsForgeTileSource source = theme != null
+                        ? MapsForgeTileSource.createFromFiles(mapFiles, theme, "fulltank")
+                        : MapsForgeTileSource.createFromFiles(mapFiles);
+                MapsForgeTileProvider provider = new MapsForgeTileProvider(
+                        new SimpleRegisterReceiver(activity), source, new SqlTileWriter());
+                map.setTileProvider(provider);
+                // Everything needed is on the device; never fall back to downloading
+                map.setUseDataConnection(false);
+                logFirstFullFrame(map, "mapsforge", startMs);
+                return true;
+            } catch (Exception e) {
+                Log.e(TAG, "Error opening offline map, using online tiles", e);
+            }
+        }
+        map.setTileSource(TileSourceFactory.MAPNIK);
+        logFirstFullFrame(map, TileSourceFactory.MAPNIK.name(), startMs);
+        return false;
+    }
+
+    private static File[] findMapFiles(Context context) {
+        List<File> found = new ArrayList<>();
+        File[] dirs = {context.getExternalFilesDir(MAPS_DIR), new File(context.getFilesDir(), MAPS_DIR)};
+        for (File dir : dirs) {
+            File[] files = dir == null ? null : dir.listFiles((d, name) -> name.endsWith(".map"));
+            if (files == null) continue;
+            for (File file : files) {
+                if (file.isFile() && file.canRead()) {
+                    found.add(file);
+                }
+            }
+        }
+        return found.toArray(new File[0]);
+    }
+
+    private static XmlRenderTheme loadRenderTheme(Context context) {
+        try {
+            return new StreamRenderTheme("", context.getAssets().open(RENDER_THEME_ASSET));
+        } catch (IOException e) {
+            return null; // Not bundled
+        }
+    }
+
+    /**
+     * Logs the time from startup until the tiles overlay first draws with every tile up to date
+     */
+    private static void logFirstFullFrame(MapView map, String sourceName, long startMs) {
+        TileStates states = map.getOverlayManager().getTilesOverlay().getTileStates();
+        states.getRunAfters().add(new Runnable() {
+            private boolean logged;
+
+            @Override
+            public void run() {
+                if (logged || states.getTotal() == 0 || states.getUpToDate() < states.getTotal()) return;
+                logged = true;
+                Log.i(TAG, "First full map frame from " + sourceName + " after "
+                        + (SystemClock.uptimeMillis() - startMs) + " ms");
+                // Not removed in place, the list is being iterated
+                map.post(() -> states.getRunAfters().remove(this));
+            }
+        });
+    }
+}
@@ -0,0 +1,147 @@
+package com.yaniv.FullTank.utils;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs marker icons into a few large bitmap pages so a whole layer of markers
+ * is drawn from shared bitmaps, one slot per distinct icon.
+ * Icons are placed on shelves: left to right, then in a new row below the
+ * tallest icon of the current one, then on a new page.
+ * Pages are 1MB each and never more than {@link #MAX_PAGES}; an icon that does
+ * not fit gets no slot. The pages are released when the system trims memory.
+ * Not thread safe; used from the main thread only.
+ */
+public class MarkerAtlas {
+    private static final int PAGE_SIZE = 512;
+    /** Page budget; the atlas never holds more pages than this */
+    private static final int MAX_PAGES = 8;
+    private static final int PADDING = 1;
+
+    /**
+     * Rasterizes the icon for a style key on an atlas miss.
+     */
+    public interface Renderer {
+        Bitmap render(long style);
+    }
+
+    private final Renderer renderer;
+    private final List<Bitmap> pages = new ArrayList<>();
+    private final Map<Long, Integer> slotOfStyle = new HashMap<>();
+    // Slot columns
+    private int[] slotPage = new int[64];
+    private Rect[] slotRects = new Rect[64];
+    private int slotCount;
+    // Packing cursor on the last page
+    private int shelfX, shelfY, shelfHeight;
+    /** Bumped whenever slots are dropped, so holders of slots know to look them up again */
+    private int generation;
+
+    public MarkerAtlas(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * @return The slot holding the icon of a style, rendering it on first use,
+     *         or -1 if it would need a page beyond the budget
+     */
+    public int slot(long style) {
+        Integer slot = slotOfStyle.get(style);
+        if (slot != null) return slot;
+
+        Bitmap icon = renderer.render(style);
+        int width = Math.min(icon.getWidth(), PAGE_SIZE);
+        int height = Math.min(icon.getHeight(), PAGE_SIZE);
+        boolean newShelf = pages.isEmpty() || shelfX + width > PAGE_SIZE;
+        int y = newShelf ? shelfY + shelfHeight : shelfY;
+        if (pages.isEmpty() || y + height > PAGE_SIZE) {
+            if (pages.size() >= MAX_PAGES) return -1;
+            pages.add(Bitmap.createBitmap(PAGE_SIZE, PAGE_SIZE, Bitmap.Config.ARGB_8888));
+            shelfX = 0;
+            shelfY = 0;
+            shelfHeight = 0;
+        } else if (newShelf) {
+            shelfX = 0;
+            shelfY = y;
+            shelfHeight = 0;
+        }
+        new Canvas(pages.get(pages.size() - 1)).drawBitmap(icon, shelfX, shelfY, null);
+
+        if (slotCount == slotRects.length) {
+            slotPage = Arrays.copyOf(slotPage, slotCount * 2);
+            slotRects = Arrays.copyOf(slotRects, slotCount * 2);
+        }
+        slotPage[slotCount] = pages.size() - 1;
+        slotRects[slotCount] = new Rect(shelfX, shelfY, shelfX + width, shelfY + height);
+        shelfX += width + PADDING;
+        shelfHeight = Math.max(shelfHeight, height + PADDING);
+        slotOfStyle.put(style, slotCount);
+        return slotCount++;
+    }
+
+    public Bitmap page(int slot) {
+        return pages.get(slotPage[slot]);
+    }
+
+    /**
+     * @return The icon of a style as rendered, for icons that got no slot
+     */
+    public Bitmap icon(long style) {
+        return renderer.render(style);
+    }
+
+    /**
+     * @return Changes whenever previously returned slots become invalid
+     */
+    public int generation() {
+        return generation;
+    }
+
+    /**
+     * @return Area of the slot's icon on its page; must not be modified
+     */
+    public Rect bounds(int slot) {
+        return slotRects[slot];
+    }
+
+    /**
+     * Drops every icon if the atlas has used up its page budget.
+     * Slots handed out before are invalid afterwards.
+     * @return Whether the atlas was cleared
+     */
+    public boolean reset() {
+        if (pages.size() < MAX_PAGES) return false;
+        clear();
+        return true;
+    }
+
+    /**
+     * Releases the pages when the system runs low on memory. They are rebuilt
+     * from the renderer for whatever is drawn next.
+     * @param level Level passed to {@link ComponentCallbacks2#onTrimMemory}
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && !pages.isEmpty()) {
+            clear();
+        }
+    }
+
+    public void clear() {
+        for (Bitmap page : pages) {
+            page.recycle();
+        }
+        pages.clear();
+        slotOfStyle.clear();
+        slotCount = 0;
+        shelfX = shelfY = shelfHeight = 0;
+        generation++;
+    }
+}
@@ -1,28 +1,39 @@
 package com.yaniv.FullTank.utils;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.location.Location;
 import android.net.Uri;
+import android.util.DisplayMetrics;
 import android.util.LruCache;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.view.ViewGroup;
+import android.util.TypedValue;
 import android.widget.Button;
 import android.widget.TextView;
-import android.widget.FrameLayout;
 
 import com.yaniv.FullTank.R;
+import com.yaniv.FullTank.dm.FuelType;
 import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.index.DistanceEngine;
+import com.yaniv.FullTank.index.StationStore;
 
-import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
-import org.osmdroid.views.overlay.Marker;
 import org.osmdroid.views.overlay.infowindow.InfoWindow;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 /**
  * Utility class for managing map markers and their associated info windows.
@@ -30,80 +41,227 @@ import java.util.Locale;
  * with custom price bubbles and information windows.
  */
 public class MarkerUtils {
-    /** Cache for storing marker bitmap images to improve performance */
-    private static final LruCache<String, Bitmap> bitmapCache = new LruCache<>(100) {
+    /** Price bubble fill for stations from the APIs/crawlers and for generic stations */
+    private static final int API_COLOR = 0xFF0077CC;
+    private static final int GENERIC_COLOR = 0xFF808080;
+    /** Marks cluster keys, keeping them apart from price bubble keys */
+    private static final long CLUSTER_KEY_FLAG = 1L << 62;
+
+    /** Marker and cluster bitmaps by key, bounded by their size in bytes */
+    private static final LruCache<Long, Bitmap> bitmapCache =
+            new LruCache<Long, Bitmap>((int) Math.min(8L << 20, Runtime.getRuntime().maxMemory() / 32)) {
         @Override
-        protected int sizeOf(String key, Bitmap bitmap) {
-            return 1; // Count each bitmap as 1 unit
+        protected int sizeOf(Long key, Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
         }
     };
 
     /**
-     * Generates a unique cache key for a price marker bitmap
+     * Glyphs for the current screen density, one set per rendering thread, so the
+     * main thread never waits for a background prewarm to finish a bubble
+     */
+    private static final ThreadLocal<BubbleGlyphs> bubbleGlyphs = new ThreadLocal<>();
+
+    /**
+     * Generates the cache key for a price bubble: price in agorot and station type.
+     * The fuel type does not change the bubble, so 95 and diesel share bitmaps.
      * @param price The fuel price to display
-     * @param isDiesel Whether the price is for diesel fuel
      * @param isFromApi Whether the station is from API/Crawling
-     * @return A unique string key for the bitmap cache
+     * @return A key unique to the bubble's look
      */
-    private static String getCacheKey(double price, boolean isDiesel, boolean isFromApi) {
-        return String.format(Locale.US, "%.2f_%b_%b", price, isDiesel, isFromApi);
+    public static long markerKey(double price, boolean isFromApi) {
+        return Math.round(price * 100) << 1 | (isFromApi ? 1 : 0);
     }
 
-    private static Bitmap createMarkerBitmap(Context context, double price, boolean isFromApi) {
-        // Create a FrameLayout as the root view with wrap_content dimensions
-        FrameLayout root = new FrameLayout(context);
-        root.setLayoutParams(new FrameLayout.LayoutParams(
-            ViewGroup.LayoutParams.WRAP_CONTENT,
-            ViewGroup.LayoutParams.WRAP_CONTENT
-        ));
-        
-        // Inflate the marker layout with the root view
-        View markerView = LayoutInflater.from(context).inflate(R.layout.marker_layout, root, false);
-        TextView priceText = markerView.findViewById(R.id.price_text);
-        priceText.setText(String.format(Locale.US, "%.2f", price));
-        
-        // Set text color to white for all stations
-        priceText.setTextColor(0xFFFFFFFF);
-        
-        // Set background color based on station type
-        markerView.setBackgroundResource(isFromApi ? R.drawable.marker_background_api : R.drawable.marker_background_generic);
-        
-        markerView.measure(
-            View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
-            View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED)
-        );
-        markerView.layout(0, 0, markerView.getMeasuredWidth(), markerView.getMeasuredHeight());
-        
-        Bitmap markerBitmap = Bitmap.createBitmap(
-            markerView.getMeasuredWidth(),
-            markerView.getMeasuredHeight(),
-            Bitmap.Config.ARGB_8888);
-        
-        markerView.draw(new android.graphics.Canvas(markerBitmap));
-        return markerBitmap;
+    private static long clusterKey(int count, double cheapestPrice) {
+        return CLUSTER_KEY_FLAG | (long) count << 24 | Math.round(cheapestPrice * 100);
+    }
+
+    /**
+     * Frees cached bitmaps when the system runs low on memory
+     * @param level Level passed to {@link android.content.ComponentCallbacks2#onTrimMemory}
+     */
+    public static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            bitmapCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            bitmapCache.trimToSize(bitmapCache.maxSize() / 2);
+        }
+    }
+
+    private static Bitmap createMarkerBitmap(Context context, long key) {
+        float density = context.getResources().getDisplayMetrics().density;
+        BubbleGlyphs glyphs = bubbleGlyphs.get();
+        if (glyphs == null || glyphs.density != density) {
+            glyphs = new BubbleGlyphs(context);
+            bubbleGlyphs.set(glyphs);
+        }
+        return glyphs.draw((int) (key >>> 1), (key & 1) != 0);
+    }
+
+    /**
+     * Caches a bitmap unless another thread cached one for the key first
+     * @return The bitmap now cached for the key
+     */
+    private static Bitmap cacheIfAbsent(long key, Bitmap bitmap) {
+        // LruCache locks on itself, so holding that lock makes get-then-put atomic
+        synchronized (bitmapCache) {
+            Bitmap existing = bitmapCache.get(key);
+            if (existing != null) return existing;
+            bitmapCache.put(key, bitmap);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Pre-rasterized pieces of a price bubble: the digits and decimal point in the
+     * bubble's font, and the oval backgrounds per price length and station type.
+     * A bubble is composed by copying these onto a new bitmap, so creating one never
+     * lays out views or shapes text. Confined to the thread that created it.
+     */
+    private static final class BubbleGlyphs {
+        private static final String CHARS = "0123456789.";
+        private static final int MAX_CHARS = 8;
+
+        final float density;
+        private final Bitmap strip;
+        private final int[] glyphLeft = new int[CHARS.length()];
+        private final int[] glyphWidth = new int[CHARS.length()];
+        private final float[] advance = new float[CHARS.length()];
+        private final int textHeight;
+        private final int padding;
+        private final int minSize;
+        /** Oval backgrounds by station type, then price length */
+        private final Bitmap[][] backgrounds = new Bitmap[2][MAX_CHARS + 1];
+        // Reused for every bubble
+        private final int[] glyphs = new int[MAX_CHARS];
+        private final Canvas canvas = new Canvas();
+        private final Rect source = new Rect();
+        private final RectF destination = new RectF();
+
+        BubbleGlyphs(Context context) {
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            density = metrics.density;
+            padding = Math.round(8 * density);
+            minSize = Math.round(32 * density);
+
+            // Same text as the old marker layout: 12sp, bold, white
+            Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
+            textPaint.setColor(Color.WHITE);
+            textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 12, metrics));
+            textPaint.setTypeface(Typeface.DEFAULT_BOLD);
+            Paint.FontMetricsInt fontMetrics = textPaint.getFontMetricsInt();
+            textHeight = fontMetrics.descent - fontMetrics.ascent;
+
+            int x = 0;
+            for (int i = 0; i < CHARS.length(); i++) {
+                advance[i] = textPaint.measureText(CHARS, i, i + 1);
+                glyphLeft[i] = x;
+                glyphWidth[i] = (int) Math.ceil(advance[i]) + 1;
+                x += glyphWidth[i] + 1;
+            }
+            strip = Bitmap.createBitmap(x, textHeight, Bitmap.Config.ARGB_8888);
+            Canvas stripCanvas = new Canvas(strip);
+            for (int i = 0; i < CHARS.length(); i++) {
+                stripCanvas.drawText(CHARS, i, i + 1, glyphLeft[i], -fontMetrics.ascent, textPaint);
+            }
+        }
+
+        Bitmap draw(int agorot, boolean isFromApi) {
+            // Digits of the price as "shekels.agorot", right to left
+            int length = 0;
+            int value = Math.max(0, agorot);
+            for (int digit = 0; digit < 2; digit++) {
+                glyphs[length++] = value % 10;
+                value /= 10;
+            }
+            glyphs[length++] = CHARS.length() - 1;
+            do {
+                glyphs[length++] = value % 10;
+                value /= 10;
+            } while (value > 0 && length < MAX_CHARS);
+
+            float textWidth = 0;
+            for (int i = 0; i < length; i++) {
+                textWidth += advance[glyphs[i]];
+            }
+            int width = Math.max(minSize, (int) Math.ceil(textWidth) + 2 * padding);
+            int height = Math.max(minSize, textHeight + 2 * padding);
+
+            Bitmap bubble = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            canvas.setBitmap(bubble);
+            canvas.drawBitmap(background(isFromApi, length, width, height), 0, 0, null);
+            float x = (width - textWidth) / 2;
+            float top = (height - textHeight) / 2f;
+            for (int i = length - 1; i >= 0; i--) {
+                int glyph = glyphs[i];
+                source.set(glyphLeft[glyph], 0, glyphLeft[glyph] + glyphWidth[glyph], textHeight);
+                destination.set(x, top, x + glyphWidth[glyph], top + textHeight);
+                canvas.drawBitmap(strip, source, destination, null);
+                x += advance[glyph];
+            }
+            canvas.setBitmap(null);
+            return bubble;
+        }
+
+        /** Digits share one advance width, so prices of one length share a background */
+        private Bitmap background(boolean isFromApi, int length, int width, int height) {
+            Bitmap background = backgrounds[isFromApi ? 1 : 0][length];
+            if (background == null) {
+                background = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+                paint.setColor(isFromApi ? API_COLOR : GENERIC_COLOR);
+                new Canvas(background).drawOval(new RectF(0, 0, width, height), paint);
+                backgrounds[isFromApi ? 1 : 0][length] = background;
+            }
+            return background;
+        }
     }
 
     /**
      * Custom info window class for displaying detailed station information
      * when a marker is tapped. Includes station details and a navigation button.
+     * The map keeps a single instance and rebinds it to each tapped station, so the
+     * layout is inflated once.
      */
     public static class StationInfoWindow extends InfoWindow {
         private final Context context;
-        private final GasStation station;
-        private final Location userLocation;
+        private final TextView contentView;
+        private final LocationState locationState;
+        private GasStation station;
 
         /**
-         * Constructs a new info window for a gas station
+         * Constructs the info window; bind a station before opening it
          * @param context Application context
          * @param mapView The map view to attach the window to
-         * @param station The gas station to display information for
-         * @param userLocation Current user location for distance calculation
+         * @param locationState Source of the user location for distance calculation
          */
-        public StationInfoWindow(Context context, MapView mapView, GasStation station, Location userLocation) {
+        public StationInfoWindow(Context context, MapView mapView, LocationState locationState) {
             super(R.layout.station_info_window, mapView);
             this.context = context;
+            this.locationState = locationState;
+            this.contentView = mView.findViewById(R.id.info_window_content);
+
+            // Set up navigation button click listener for whichever station is bound
+            Button navigateButton = mView.findViewById(R.id.navigate_button);
+            navigateButton.setOnClickListener(v -> {
+                String uri = String.format(Locale.US, "geo:%f,%f?q=%f,%f(%s)",
+                    station.getGps().getLat(), station.getGps().getLng(),
+                    station.getGps().getLat(), station.getGps().getLng(),
+                    station.getCompany() + " - " + station.getAddress());
+                Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(uri));
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                this.context.startActivity(intent);
+                close(); // Close the info window after starting navigation
+            });
+        }
+
+        /**
+         * Points the window at a station; shown on next open
+         * @param station The gas station to display information for
+         */
+        public void bind(GasStation station) {
             this.station = station;
-            this.userLocation = userLocation;
         }
 
         /**
@@ -114,11 +272,11 @@ public class MarkerUtils {
          */
         private float calculateDistance(Location userLocation, GasStation station) {
             if (userLocation == null) return 0;
-            
-            Location stationLocation = new Location("");
-            stationLocation.setLatitude(station.getGps().getLat());
-            stationLocation.setLongitude(station.getGps().getLng());
-            return userLocation.distanceTo(stationLocation);
+
+            return DistanceEngine.between(
+                userLocation.getLatitude(), userLocation.getLongitude(),
+                station.getGps().getLat(), station.getGps().getLng()
+            );
         }
 
         /**
@@ -137,9 +295,6 @@ public class MarkerUtils {
             // Close any previously open windows on the map
             InfoWindow.closeAllInfoWindowsOn(mMapView);
 
-            TextView contentView = mView.findViewById(R.id.info_window_content);
-            Button navigateButton = mView.findViewById(R.id.navigate_button);
-            
             // Set the station information
             StringBuilder info = new StringBuilder();
             
@@ -147,7 +302,8 @@ public class MarkerUtils {
             info.append("🏢 ").append(station.getCompany()).append("\n");
             info.append("📍 ").append(station.getAddress()).append("\n");
             
-            // Distance section (if available)
+            // Distance section (if available), from the latest fix
+            Location userLocation = locationState.get();
             if (userLocation != null) {
                 float distance = calculateDistance(userLocation, station);
                 info.append("📏 ").append(formatDistance(distance)).append("\n");
@@ -180,18 +336,6 @@ public class MarkerUtils {
             }
 
             contentView.setText(info.toString());
-            
-            // Set up navigation button click listener
-            navigateButton.setOnClickListener(v -> {
-                String uri = String.format(Locale.US, "geo:%f,%f?q=%f,%f(%s)",
-                    station.getGps().getLat(), station.getGps().getLng(),
-                    station.getGps().getLat(), station.getGps().getLng(),
-                    station.getCompany() + " - " + station.getAddress());
-                Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(uri));
-                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                context.startActivity(intent);
-                close(); // Close the info window after starting navigation
-            });
         }
 
         @Override
@@ -201,36 +345,118 @@ public class MarkerUtils {
     }
 
     /**
-     * Creates a marker for a gas station on the map
+     * Gets the price bubble bitmap for a price
      * @param context Application context
-     * @param station The gas station to create a marker for
-     * @param showingDiesel Whether to show diesel or 95 fuel prices
-     * @param userLocation Current user location for distance calculation
-     * @return A configured marker ready to be added to the map
+     * @param price The fuel price to display
+     * @param isFromApi Whether the station is from API/Crawling
+     * @return Cached bitmap; must not be modified
      */
-    public static Marker createMarkerForStation(Context context, MapView map, GasStation station,
-            boolean showingDiesel, Location userLocation) {
-        Marker marker = new Marker(map);
-        marker.setPosition(new GeoPoint(station.getGps().getLat(), station.getGps().getLng()));
-        
-        // Get price for marker
-        double price = showingDiesel ? station.getFuel_prices().getDiesel() : station.getFuel_prices().getPetrol_95();
-        
+    public static Bitmap getMarkerBitmap(Context context, double price, boolean isFromApi) {
+        return getMarkerBitmap(context, markerKey(price, isFromApi));
+    }
+
+    /**
+     * Gets the price bubble bitmap for a key from {@link #markerKey}
+     * @param context Application context
+     * @param key The bubble's key
+     * @return Cached bitmap; must not be modified
+     */
+    public static Bitmap getMarkerBitmap(Context context, long key) {
         // Try to get bitmap from cache
-        String cacheKey = getCacheKey(price, showingDiesel, station.isFromApi());
-        Bitmap markerBitmap = bitmapCache.get(cacheKey);
+        Bitmap markerBitmap = bitmapCache.get(key);
         
-        // Create and cache bitmap if not found
+        // Create and cache bitmap if not found; rendering runs without any lock held
         if (markerBitmap == null) {
-            markerBitmap = createMarkerBitmap(context, price, station.isFromApi());
-            bitmapCache.put(cacheKey, markerBitmap);
+            markerBitmap = cacheIfAbsent(key, createMarkerBitmap(context, key));
         }
-        
-        marker.setIcon(new BitmapDrawable(context.getResources(), markerBitmap));
-        
-        // Set custom info window
-        marker.setInfoWindow(new StationInfoWindow(context, map, station, userLocation));
+        return markerBitmap;
+    }
 
-        return marker;
+    /**
+     * Renders the price bubbles of a snapshot ahead of time, for both fuel types,
+     * so the first map paint and the fuel toggle find them in the cache.
+     * Most common prices go first, and each fuel type gets at most half of
+     * three quarters of the cache, so warming never evicts itself.
+     * Call off the main thread.
+     * @param context Application context
+     * @param store The snapshot's stations
+     * @param superseded Whether a newer snapshot replaced this one; checked between bubbles, to stop early
+     */
+    public static void prewarmMarkers(Context context, StationStore store, BooleanSupplier superseded) {
+        long budget = bitmapCache.maxSize() * 3L / 8;
+        try {
+            for (FuelType fuelType : new FuelType[]{FuelType.PETROL_95, FuelType.DIESEL}) {
+                Map<Long, Integer> counts = new HashMap<>();
+                for (int row = 0; row < store.size(); row++) {
+                    long key = markerKey(store.price(fuelType, row), store.isFromApi(row));
+                    counts.merge(key, 1, Integer::sum);
+                }
+                List<Map.Entry<Long, Integer>> keys = new ArrayList<>(counts.entrySet());
+                keys.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+
+                long used = 0;
+                for (Map.Entry<Long, Integer> entry : keys) {
+                    if (used >= budget || superseded.getAsBoolean()) break;
+                    used += getMarkerBitmap(context, entry.getKey()).getAllocationByteCount();
+                }
+            }
+        } finally {
+            // The worker thread is pooled; don't keep its glyphs alive
+            bubbleGlyphs.remove();
+        }
+    }
+
+    /**
+     * Gets the badge icon for a cluster of stations: a circle with the station count
+     * and a pill with the cheapest price among them
+     * @param context Application context
+     * @param count Number of stations in the cluster
+     * @param cheapestPrice Cheapest price in the cluster, 0 if unknown
+     * @return Icon drawable backed by a cached bitmap
+     */
+    public static BitmapDrawable getClusterIcon(Context context, int count, double cheapestPrice) {
+        long cacheKey = clusterKey(count, cheapestPrice);
+        Bitmap clusterBitmap = bitmapCache.get(cacheKey);
+        if (clusterBitmap == null) {
+            clusterBitmap = cacheIfAbsent(cacheKey, createClusterBitmap(context, count, cheapestPrice));
+        }
+        return new BitmapDrawable(context.getResources(), clusterBitmap);
+    }
+
+    private static Bitmap createClusterBitmap(Context context, int count, double cheapestPrice) {
+        float density = context.getResources().getDisplayMetrics().density;
+        // Larger clusters get a slightly larger circle
+        float radius = density * (count < 10 ? 16 : count < 100 ? 19 : 22);
+        float pillHeight = cheapestPrice > 0 ? density * 16 : 0;
+
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setFakeBoldText(true);
+        String priceText = String.format(Locale.US, "₪%.2f", cheapestPrice);
+        textPaint.setTextSize(density * 11);
+        float pillWidth = cheapestPrice > 0 ? textPaint.measureText(priceText) + density * 10 : 0;
+
+        int width = (int) Math.ceil(Math.max(radius * 2, pillWidth));
+        int height = (int) Math.ceil(radius * 2 + pillHeight / 2);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circlePaint.setColor(Color.parseColor("#0077cc"));
+        canvas.drawCircle(width / 2f, radius, radius, circlePaint);
+        textPaint.setTextSize(density * 13);
+        canvas.drawText(String.valueOf(count), width / 2f, radius - (textPaint.ascent() + textPaint.descent()) / 2, textPaint);
+
+        if (cheapestPrice > 0) {
+            // Price pill overlapping the bottom of the circle
+            Paint pillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            pillPaint.setColor(Color.parseColor("#2e7d32"));
+            RectF pill = new RectF((width - pillWidth) / 2, height - pillHeight, (width + pillWidth) / 2, height);
+            canvas.drawRoundRect(pill, pillHeight / 2, pillHeight / 2, pillPaint);
+            textPaint.setTextSize(density * 11);
+            canvas.drawText(priceText, width / 2f, pill.centerY() - (textPaint.ascent() + textPaint.descent()) / 2, textPaint);
+        }
+        return bitmap;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,332 @@
+package com.yaniv.FullTank.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.MotionEvent;
+
+import com.yaniv.FullTank.dm.FuelType;
+import com.yaniv.FullTank.index.SpatialIndex;
+import com.yaniv.FullTank.index.StationStore;
+
+import org.osmdroid.api.IGeoPoint;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.TileSystem;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+import java.util.Arrays;
+
+/**
+ * Draws the price bubbles of many stations as one overlay, straight from the
+ * station store, instead of one osmdroid Marker per station.
+ * Icons come from a shared {@link MarkerAtlas}. Positions are kept in Web Mercator
+ * units, so a frame projects one reference point and places every station relative
+ * to it. Taps are resolved through the snapshot's spatial index.
+ * Icons are anchored at their bottom center, like a Marker's default anchor.
+ */
+public class StationOverlay extends Overlay {
+    private static final double MAX_LATITUDE = 85.05112877980659;
+
+    /**
+     * Receives taps on a drawn station.
+     */
+    public interface OnStationTapListener {
+        void onStationTap(int row);
+    }
+
+    private final MarkerAtlas atlas;
+    private OnStationTapListener tapListener;
+
+    private StationStore store;
+    private SpatialIndex spatialIndex;
+    /** Drawn rows, north to south so southern bubbles overlap northern ones */
+    private int[] rows = new int[0];
+    /** Draw position of each store row, or -1 if it is not drawn; reused while the snapshot stays */
+    private int[] drawIndexOfRow = new int[0];
+    /** Sort buffer of {@link #setStations}, reused between viewport updates */
+    private long[] sortKeys = new long[0];
+    // Per drawn station: bubble style, atlas slot (-1 if it got none) and Web Mercator position (0..1 on both axes)
+    private long[] styles = new long[0];
+    private int[] slots = new int[0];
+    /** Own bitmap of each station without a slot, null for the others; resolved with the slots */
+    private Bitmap[] icons = new Bitmap[0];
+    /** Atlas generation the slots were looked up in */
+    private int slotsGeneration;
+    private double[] mercX = new double[0];
+    private double[] mercY = new double[0];
+    /** Start positions of stations sliding into place, NaN for stations already there */
+    private double[] fromX = new double[0];
+    private double[] fromY = new double[0];
+    private float progress = 1f;
+
+    // Reused on every frame
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final GeoPoint reference = new GeoPoint(0.0, 0.0);
+    private final Point referencePixel = new Point();
+    private final RectF destination = new RectF();
+    private final Rect iconBounds = new Rect();
+
+    public StationOverlay(MarkerAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    public void setOnStationTapListener(OnStationTapListener tapListener) {
+        this.tapListener = tapListener;
+    }
+
+    /**
+     * Replaces the drawn stations.
+     *
+     * @param store Snapshot the rows belong to
+     * @param spatialIndex Spatial index of the same snapshot, used for taps
+     * @param rows Rows to draw
+     * @param fuelType Fuel whose price the bubbles show
+     * @return Rows that were not drawn before
+     */
+    public int[] setStations(StationStore store, SpatialIndex spatialIndex, int[] rows, FuelType fuelType) {
+        // Slots are looked up again below, so a full atlas can start over here
+        atlas.reset();
+        int n = rows.length;
+
+        // Pack (latitude key, row) so a primitive sort orders north to south, then by row
+        if (sortKeys.length < n) {
+            sortKeys = new long[Math.max(n, sortKeys.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            sortKeys[i] = latitudeKey(store.lat(rows[i])) << 32 | rows[i];
+        }
+        Arrays.sort(sortKeys, 0, n);
+
+        // Reuse the row lookup of the same snapshot; only entries of the previous rows need clearing
+        boolean sameStore = store == this.store;
+        if (!sameStore || drawIndexOfRow.length != store.size()) {
+            drawIndexOfRow = new int[store.size()];
+            Arrays.fill(drawIndexOfRow, -1);
+        }
+        int[] added = new int[n];
+        int addedCount = 0;
+        for (int i = 0; i < n; i++) {
+            int row = (int) sortKeys[i];
+            if (!sameStore || drawIndexOfRow[row] < 0) {
+                added[addedCount++] = row;
+            }
+        }
+        if (sameStore) {
+            for (int row : this.rows) {
+                drawIndexOfRow[row] = -1;
+            }
+        }
+        this.store = store;
+        this.spatialIndex = spatialIndex;
+
+        this.rows = new int[n];
+        styles = new long[n];
+        slots = new int[n];
+        icons = new Bitmap[n];
+        mercX = new double[n];
+        mercY = new double[n];
+        fromX = new double[n];
+        fromY = new double[n];
+        Arrays.fill(fromX, Double.NaN);
+        progress = 1f;
+        for (int i = 0; i < n; i++) {
+            int row = (int) sortKeys[i];
+            this.rows[i] = row;
+            drawIndexOfRow[row] = i;
+            styles[i] = styleOf(store, row, fuelType);
+            mercX[i] = mercatorX(store.lng(row));
+            mercY[i] = mercatorY(store.lat(row));
+        }
+        assignSlots();
+        return Arrays.copyOf(added, addedCount);
+    }
+
+    /**
+     * Looks up the atlas slot of every drawn station. If the atlas runs out of
+     * pages part way, it starts over once with only these stations' icons; any
+     * icon that still does not fit is drawn from its own bitmap.
+     */
+    private void assignSlots() {
+        boolean full = false;
+        for (int i = 0; i < slots.length && !full; i++) {
+            slots[i] = atlas.slot(styles[i]);
+            full = slots[i] < 0;
+        }
+        if (full) {
+            atlas.clear();
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = atlas.slot(styles[i]);
+            }
+        }
+        // Render or look up overflow icons here, once, so frames only read arrays
+        for (int i = 0; i < slots.length; i++) {
+            icons[i] = slots[i] < 0 ? atlas.icon(styles[i]) : null;
+        }
+        slotsGeneration = atlas.generation();
+    }
+
+    /**
+     * Releases the icon atlas when the system runs low on memory; the next frame
+     * rebuilds it for the drawn stations only.
+     * @param level Level passed to {@link android.content.ComponentCallbacks2#onTrimMemory}
+     */
+    public void onTrimMemory(int level) {
+        atlas.onTrimMemory(level);
+    }
+
+    /** Bitmap the i-th drawn station's icon is copied from */
+    private Bitmap iconBitmap(int i) {
+        return slots[i] >= 0 ? atlas.page(slots[i]) : icons[i];
+    }
+
+    /** Area of the i-th drawn station's icon within {@link #iconBitmap}; must not be modified */
+    private Rect iconBounds(int i) {
+        if (slots[i] >= 0) return atlas.bounds(slots[i]);
+        iconBounds.set(0, 0, icons[i].getWidth(), icons[i].getHeight());
+        return iconBounds;
+    }
+
+    /**
+     * Non-negative key that increases from north to south, at the 1e-7 degree
+     * resolution stations are stored with
+     */
+    private static long latitudeKey(double lat) {
+        return Math.round((90 - Math.max(-90, Math.min(90, lat))) * 1e7);
+    }
+
+    /**
+     * Style key of a station's bubble, see {@link MarkerUtils#markerKey}
+     */
+    public static long styleOf(StationStore store, int row, FuelType fuelType) {
+        return MarkerUtils.markerKey(store.price(fuelType, row), store.isFromApi(row));
+    }
+
+    /**
+     * Makes a drawn station start its slide into place from another position
+     */
+    public void setOrigin(int row, double lat, double lng) {
+        int i = row < drawIndexOfRow.length ? drawIndexOfRow[row] : -1;
+        if (i < 0) return;
+        fromX[i] = mercatorX(lng);
+        fromY[i] = mercatorY(lat);
+    }
+
+    /**
+     * @param progress 0 at the origins set by {@link #setOrigin}, 1 in place
+     */
+    public void setProgress(float progress) {
+        this.progress = progress;
+        if (progress >= 1f) {
+            Arrays.fill(fromX, Double.NaN);
+        }
+    }
+
+    public void clear() {
+        rows = new int[0];
+        drawIndexOfRow = new int[0];
+        sortKeys = new long[0];
+        icons = new Bitmap[0];
+        store = null;
+        spatialIndex = null;
+    }
+
+    @Override
+    public void draw(Canvas canvas, Projection projection) {
+        int n = rows.length;
+        if (n == 0) return;
+        if (slotsGeneration != atlas.generation()) {
+            assignSlots(); // the atlas was released since the last frame
+        }
+
+        // Project one station; the rest are offsets from it in world pixels
+        reference.setCoords(store.lat(rows[0]), store.lng(rows[0]));
+        projection.toPixels(reference, referencePixel);
+        double mapSize = TileSystem.MapSize(projection.getZoomLevel());
+        double originX = referencePixel.x - mercX[0] * mapSize;
+        double originY = referencePixel.y - mercY[0] * mapSize;
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        boolean moving = progress < 1f;
+
+        for (int i = 0; i < n; i++) {
+            double x = mercX[i];
+            double y = mercY[i];
+            if (moving && !Double.isNaN(fromX[i])) {
+                x = fromX[i] + (x - fromX[i]) * progress;
+                y = fromY[i] + (y - fromY[i]) * progress;
+            }
+            float px = (float) (originX + x * mapSize);
+            float py = (float) (originY + y * mapSize);
+            Rect source = iconBounds(i);
+            float left = px - source.width() / 2f;
+            float top = py - source.height();
+            if (left > width || top > height || left + source.width() < 0 || py < 0) continue;
+            destination.set(left, top, left + source.width(), py);
+            canvas.drawBitmap(iconBitmap(i), source, destination, paint);
+        }
+    }
+
+    @Override
+    public boolean onSingleTapConfirmed(MotionEvent event, MapView mapView) {
+        int row = hitTest(event.getX(), event.getY(), mapView.getProjection());
+        if (row < 0 || tapListener == null) return false;
+        tapListener.onStationTap(row);
+        return true;
+    }
+
+    /**
+     * @return The topmost drawn station whose bubble covers a screen point, or -1
+     */
+    private int hitTest(float x, float y, Projection projection) {
+        if (spatialIndex == null || rows.length == 0) return -1;
+        if (slotsGeneration != atlas.generation()) {
+            assignSlots();
+        }
+
+        // A bubble covering the point has its anchor within one bubble size below it
+        int maxWidth = 0, maxHeight = 0;
+        for (int i = 0; i < slots.length; i++) {
+            Rect bounds = iconBounds(i);
+            maxWidth = Math.max(maxWidth, bounds.width());
+            maxHeight = Math.max(maxHeight, bounds.height());
+        }
+        IGeoPoint northWest = projection.fromPixels((int) (x - maxWidth / 2f), (int) y);
+        IGeoPoint southEast = projection.fromPixels((int) (x + maxWidth / 2f), (int) (y + maxHeight));
+        int[] candidates = spatialIndex.withinBox(southEast.getLatitude(), northWest.getLongitude(),
+                northWest.getLatitude(), southEast.getLongitude());
+
+        int best = -1;
+        Point pixel = new Point();
+        GeoPoint position = new GeoPoint(0.0, 0.0);
+        for (int row : candidates) {
+            int i = drawIndexOfRow[row];
+            if (i <= best) continue; // not drawn, or below the current hit
+            position.setCoords(store.lat(row), store.lng(row));
+            projection.toPixels(position, pixel);
+            Rect bounds = iconBounds(i);
+            if (Math.abs(x - pixel.x) <= bounds.width() / 2f && y <= pixel.y && y >= pixel.y - bounds.height()) {
+                best = i;
+            }
+        }
+        return best < 0 ? -1 : rows[best];
+    }
+
+    @Override
+    public void onDetach(MapView mapView) {
+        clear();
+    }
+
+    private static double mercatorX(double lng) {
+        return (Math.max(-180, Math.min(180, lng)) + 180) / 360;
+    }
+
+    private static double mercatorY(double lat) {
+        double sinLat = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat))));
+        return 0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI);
+    }
+}
@@ -0,0 +1,268 @@
+package com.yaniv.FullTank.utils;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.yaniv.FullTank.query.StationResults;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the UI's query intent (search text, fuel type, sort order, generic
+ * stations, location) and recomputes the map, search and nearby results off the
+ * main thread.
+ * Bursts of changes are coalesced into one recompute, work made stale by a newer
+ * change is abandoned, and only the latest result is posted back to the listener.
+ * All setters must be called on the main thread.
+ */
+public class StationQueryStore {
+    private static final String TAG = "StationQueryStore";
+    /** Typing settles for this long before a search runs */
+    private static final long QUERY_DEBOUNCE_MS = 120;
+    /** Other changes are coalesced into one recompute per frame */
+    private static final long FRAME_MS = 16;
+
+    /**
+     * Receives results on the main thread.
+     */
+    public interface Listener {
+        void onResult(Result result);
+    }
+
+    /**
+     * Everything the views need for one state of the query intent.
+     */
+    public static class Result {
+        private final String query;
+        private final StationResults matchingStations;
+        private final int[] matchingRows;
+        private final StationResults nearbyStations;
+        /** Set on the main thread right before delivery */
+        private boolean stationsChanged;
+
+        Result(String query, StationResults matchingStations,
+               int[] matchingRows, StationResults nearbyStations) {
+            this.query = query;
+            this.matchingStations = matchingStations;
+            this.matchingRows = matchingRows;
+            this.nearbyStations = nearbyStations;
+        }
+
+        public boolean hasQuery() {
+            return !query.trim().isEmpty();
+        }
+
+        /**
+         * @return Whether the matching stations or the displayed fuel changed since the
+         *         previous result; false if only the location or sort order did
+         */
+        public boolean hasStationsChanged() {
+            return stationsChanged;
+        }
+
+        /**
+         * @return Stations matching the query, or all stations if there is none
+         */
+        public StationResults getMatchingStations() {
+            return matchingStations;
+        }
+
+        /**
+         * @return Ascending store rows of the matching stations, in the store of
+         *         {@link #getMatchingStations()}, or null if there is no query
+         */
+        public int[] getMatchingRows() {
+            return matchingRows;
+        }
+
+        /**
+         * @return Nearby stations, or null if the nearby list is hidden or the location is unknown
+         */
+        public StationResults getNearbyStations() {
+            return nearbyStations;
+        }
+    }
+
+    /** Immutable copy of the intent a recompute runs against */
+    private static class Request {
+        final String query;
+        final boolean showingDiesel;
+        final boolean sortByPrice;
+        final boolean showingGeneric;
+        final boolean nearbyRequested;
+        final Location location;
+        final int stationsVersion;
+
+        Request(String query, boolean showingDiesel, boolean sortByPrice, boolean showingGeneric,
+                boolean nearbyRequested, Location location, int stationsVersion) {
+            this.query = query;
+            this.showingDiesel = showingDiesel;
+            this.sortByPrice = sortByPrice;
+            this.showingGeneric = showingGeneric;
+            this.nearbyRequested = nearbyRequested;
+            this.location = location;
+            this.stationsVersion = stationsVersion;
+        }
+    }
+
+    private final GasStationDataManager dataManager;
+    private final Listener listener;
+    private final float maxNearbyDistance;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, TAG));
+    /** Bumped on every change; work and results of older generations are dropped */
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Runnable recompute = this::recompute;
+    private Future<?> inFlight;
+    /** Bumped by changes that affect which stations match or how they are drawn */
+    private int stationsVersion;
+    private int deliveredStationsVersion = -1;
+
+    // Current intent
+    private String query = "";
+    private boolean showingDiesel = false;
+    private boolean sortByPrice = false;
+    private boolean showingGeneric = true;
+    private boolean nearbyRequested = false;
+    private Location location;
+
+    public StationQueryStore(GasStationDataManager dataManager, float maxNearbyDistance, Listener listener) {
+        this.dataManager = dataManager;
+        this.maxNearbyDistance = maxNearbyDistance;
+        this.listener = listener;
+    }
+
+    public void setQuery(String query) {
+        this.query = query == null ? "" : query;
+        stationsVersion++;
+        schedule(QUERY_DEBOUNCE_MS);
+    }
+
+    public void setShowingDiesel(boolean showingDiesel) {
+        this.showingDiesel = showingDiesel;
+        stationsVersion++;
+        schedule(FRAME_MS);
+    }
+
+    public void setSortByPrice(boolean sortByPrice) {
+        this.sortByPrice = sortByPrice;
+        schedule(FRAME_MS);
+    }
+
+    public void setShowingGeneric(boolean showingGeneric) {
+        this.showingGeneric = showingGeneric;
+        stationsVersion++;
+        schedule(FRAME_MS);
+    }
+
+    public void setNearbyRequested(boolean nearbyRequested) {
+        this.nearbyRequested = nearbyRequested;
+        schedule(FRAME_MS);
+    }
+
+    /**
+     * Sets the origin for distances. Only search results and the nearby list depend
+     * on it, so nothing is recomputed while neither is in use.
+     */
+    public void setLocation(Location location) {
+        this.location = location;
+        if (query.trim().isEmpty() && !nearbyRequested) return;
+        schedule(FRAME_MS);
+    }
+
+    /**
+     * Recomputes with the current intent, e.g. after new station data loaded.
+     */
+    public void refresh() {
+        stationsVersion++;
+        schedule(FRAME_MS);
+    }
+
+    /**
+     * Stops the worker; no further results are delivered.
+     */
+    public void release() {
+        generation.incrementAndGet();
+        mainHandler.removeCallbacks(recompute);
+        executor.shutdownNow();
+    }
+
+    private void schedule(long delayMs) {
+        // Invalidate right away so nothing computed for the old intent reaches the views
+        generation.incrementAndGet();
+        mainHandler.removeCallbacks(recompute);
+        mainHandler.postDelayed(recompute, delayMs);
+    }
+
+    private void recompute() {
+        if (executor.isShutdown()) return;
+        int requestGeneration = generation.get();
+        Request request = new Request(query, showingDiesel, sortByPrice, showingGeneric, nearbyRequested, location,
+                stationsVersion);
+        if (inFlight != null) {
+            inFlight.cancel(false);
+        }
+        inFlight = executor.submit(() -> {
+            try {
+                Result result = compute(request, requestGeneration);
+                if (result == null) return;
+                mainHandler.post(() -> {
+                    if (requestGeneration == generation.get()) {
+                        result.stationsChanged = request.stationsVersion != deliveredStationsVersion;
+                        deliveredStationsVersion = request.stationsVersion;
+                        listener.onResult(result);
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error computing station query", e);
+            }
+        });
+    }
+
+    private boolean isStale(int requestGeneration) {
+        return requestGeneration != generation.get();
+    }
+
+    /**
+     * @return The result, or null if the intent changed while computing
+     */
+    private Result compute(Request request, int requestGeneration) {
+        if (isStale(requestGeneration)) return null;
+        StationResults matchingStations = filterGenericStations(
+                dataManager.filterStations(request.query, request.location, request.showingDiesel, request.sortByPrice),
+                request.showingGeneric);
+
+        if (isStale(requestGeneration)) return null;
+        StationResults nearbyStations = null;
+        if (request.nearbyRequested && request.location != null) {
+            nearbyStations = filterGenericStations(
+                    dataManager.getNearbyStations(request.location, request.showingDiesel, request.sortByPrice, maxNearbyDistance),
+                    request.showingGeneric);
+        }
+
+        // Rows rather than ids: ids repeat across sources, and a sorted int[] boxes nothing
+        int[] matchingRows = null;
+        if (!request.query.trim().isEmpty()) {
+            matchingRows = new int[matchingStations.size()];
+            for (int i = 0; i < matchingRows.length; i++) {
+                matchingRows[i] = matchingStations.row(i);
+            }
+            Arrays.sort(matchingRows);
+        }
+        return new Result(request.query, matchingStations, matchingRows, nearbyStations);
+    }
+
+    /**
+     * Drops generic stations unless they are shown. Works on rows, so no
+     * GasStation is created for a row that is filtered out or never displayed.
+     */
+    private static StationResults filterGenericStations(StationResults stations, boolean showingGeneric) {
+        return showingGeneric ? stations : stations.fromApiOnly();
+    }
+}
@@ -0,0 +1,348 @@
+package com.yaniv.FullTank.utils;
+
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.yaniv.FullTank.handlers.NetworkClient;
+
+import org.osmdroid.config.Configuration;
+import org.osmdroid.events.DelayedMapListener;
+import org.osmdroid.events.MapListener;
+import org.osmdroid.events.ScrollEvent;
+import org.osmdroid.events.ZoomEvent;
+import org.osmdroid.tileprovider.modules.SqlTileWriter;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.TileSystem;
+import org.osmdroid.views.MapView;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Downloads the map tiles the user is about to drive into, before they come into view.
+ * From the speed and bearing of each GPS fix it predicts where the viewport will be
+ * over the next {@link #LOOKAHEAD_SECONDS} and stores the tiles covering that corridor
+ * in osmdroid's tile database, where the map finds them when it gets there.
+ * Work is bounded per minute in requests and bytes, and queued tiles that fall out of
+ * a newer corridor are dropped before they are downloaded.
+ * Only active for online tile sources; offline maps need no prefetch.
+ */
+public class TilePrefetcher {
+    private static final String TAG = "TilePrefetcher";
+    /** Below this speed (~18 km/h) the map keeps up on its own */
+    private static final float MIN_SPEED_MPS = 5;
+    private static final int LOOKAHEAD_SECONDS = 60;
+    private static final double MAX_LOOKAHEAD_METERS = 5000;
+    /** Budget per one-minute window */
+    private static final int MAX_REQUESTS_PER_MINUTE = 120;
+    private static final long MAX_BYTES_PER_MINUTE = 4L << 20;
+    private static final long BUDGET_WINDOW_MS = 60_000;
+    private static final int MAX_TILES_PER_CORRIDOR = 80;
+    /** Expiry stored with prefetched tiles */
+    private static final long TILE_LIFETIME_MS = TimeUnit.DAYS.toMillis(7);
+    private static final long VIEWPORT_CHECK_DELAY_MS = 500;
+    /** Visible tiles remembered for the hit rate, a few dozen viewports' worth */
+    private static final int MAX_SEEN_TILES = 2048;
+
+    /**
+     * Counters since the prefetcher was created.
+     */
+    public static class Metrics {
+        public final int requests;
+        public final long bytes;
+        public final int alreadyCached;
+        public final int cancelled;
+        public final int overBudget;
+        public final int visibleHits;
+        public final int visibleMisses;
+
+        Metrics(int requests, long bytes, int alreadyCached, int cancelled, int overBudget,
+                int visibleHits, int visibleMisses) {
+            this.requests = requests;
+            this.bytes = bytes;
+            this.alreadyCached = alreadyCached;
+            this.cancelled = cancelled;
+            this.overBudget = overBudget;
+            this.visibleHits = visibleHits;
+            this.visibleMisses = visibleMisses;
+        }
+
+        /**
+         * @return Share of tiles that were already in the tile cache when they first came into view
+         */
+        public float getHitRate() {
+            int seen = visibleHits + visibleMisses;
+            return seen == 0 ? 0 : (float) visibleHits / seen;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "hit rate %.0f%% (%d/%d), %d requests, %d KB, %d cached, %d cancelled, %d over budget",
+                    getHitRate() * 100, visibleHits, visibleHits + visibleMisses, requests, bytes / 1024,
+                    alreadyCached, cancelled, overBudget);
+        }
+    }
+
+    private final MapView map;
+    private final SqlTileWriter tileWriter = new SqlTileWriter();
+    /** Shares the app's connection pool; tiles go to osmdroid's tile database, not the HTTP cache */
+    private final OkHttpClient httpClient = NetworkClient.get().newBuilder()
+            .cache(null)
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(10, TimeUnit.SECONDS)
+            .build();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2, r -> new Thread(r, TAG));
+
+    /** Tiles of the latest corridor; queued tiles outside it are skipped */
+    private volatile Set<Long> corridor = Collections.emptySet();
+    /** Tiles waiting for or being downloaded */
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    /**
+     * Tiles recently counted as a visible hit or miss, least recently visible first.
+     * Only touched by the map listener, on the main thread.
+     */
+    private final LinkedHashMap<Long, Boolean> seen = new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_SEEN_TILES;
+        }
+    };
+
+    // Budget of the current window
+    private long windowStartMs;
+    private int windowRequests;
+    private long windowBytes;
+
+    // Metrics
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger alreadyCached = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private final AtomicInteger overBudget = new AtomicInteger();
+    private final AtomicInteger visibleHits = new AtomicInteger();
+    private final AtomicInteger visibleMisses = new AtomicInteger();
+
+    public TilePrefetcher(MapView map) {
+        this.map = map;
+        map.addMapListener(new DelayedMapListener(new MapListener() {
+            @Override
+            public boolean onScroll(ScrollEvent event) {
+                countVisibleTiles();
+                return false;
+            }
+
+            @Override
+            public boolean onZoom(ZoomEvent event) {
+                countVisibleTiles();
+                return false;
+            }
+        }, VIEWPORT_CHECK_DELAY_MS));
+    }
+
+    /**
+     * Predicts the corridor ahead of a fix and queues its missing tiles
+     */
+    public void onLocationChanged(Location location) {
+        if (executor.isShutdown()) return;
+        OnlineTileSourceBase tileSource = onlineTileSource();
+        if (tileSource == null || !location.hasSpeed() || !location.hasBearing()
+                || location.getSpeed() < MIN_SPEED_MPS) {
+            corridor = Collections.emptySet(); // drops whatever is still queued
+            return;
+        }
+
+        Set<Long> tiles = corridorTiles(location);
+        corridor = tiles;
+        for (long tile : tiles) {
+            if (!queued.add(tile)) continue;
+            executor.execute(() -> {
+                try {
+                    prefetch(tileSource, tile);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error prefetching tile " + MapTileIndex.toString(tile), e);
+                } finally {
+                    queued.remove(tile);
+                }
+            });
+        }
+    }
+
+    /**
+     * Tiles covering a viewport-sized box at every step of the path ahead, nearest first
+     */
+    private Set<Long> corridorTiles(Location location) {
+        // The map draws tiles of the zoom level below a fractional zoom
+        int zoom = (int) Math.floor(map.getZoomLevelDouble());
+        int tileSize = TileSystem.getTileSize();
+        int halfWidth = (int) Math.ceil(map.getWidth() / 2.0 / tileSize);
+        int halfHeight = (int) Math.ceil(map.getHeight() / 2.0 / tileSize);
+        int maxTile = (1 << zoom) - 1;
+
+        double distance = Math.min(location.getSpeed() * LOOKAHEAD_SECONDS, MAX_LOOKAHEAD_METERS);
+        double[] start = tileXY(location.getLatitude(), location.getLongitude(), zoom);
+        double[] end = destination(location.getLatitude(), location.getLongitude(), location.getBearing(), distance);
+        double[] endTile = tileXY(end[0], end[1], zoom);
+        int steps = (int) Math.ceil(Math.max(Math.abs(endTile[0] - start[0]), Math.abs(endTile[1] - start[1])));
+
+        Set<Long> tiles = new LinkedHashSet<>();
+        for (int step = 1; step <= steps && tiles.size() < MAX_TILES_PER_CORRIDOR; step++) {
+            double t = (double) step / steps;
+            int cx = (int) Math.floor(start[0] + (endTile[0] - start[0]) * t);
+            int cy = (int) Math.floor(start[1] + (endTile[1] - start[1]) * t);
+            for (int x = cx - halfWidth; x <= cx + halfWidth; x++) {
+                for (int y = cy - halfHeight; y <= cy + halfHeight; y++) {
+                    if (x < 0 || y < 0 || x > maxTile || y > maxTile) continue;
+                    tiles.add(MapTileIndex.getTileIndex(zoom, x, y));
+                }
+            }
+        }
+        return tiles;
+    }
+
+    private void prefetch(OnlineTileSourceBase tileSource, long tile) throws Exception {
+        if (!corridor.contains(tile)) {
+            cancelled.incrementAndGet();
+            return;
+        }
+        if (tileWriter.exists(tileSource, tile)) {
+            alreadyCached.incrementAndGet();
+            return;
+        }
+        if (!reserveRequest()) {
+            overBudget.incrementAndGet();
+            return;
+        }
+
+        Request request = new Request.Builder()
+                .url(tileSource.getTileURLString(tile))
+                .header("User-Agent", Configuration.getInstance().getUserAgentValue())
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) return;
+            byte[] data = body.bytes();
+            requests.incrementAndGet();
+            bytes.addAndGet(data.length);
+            addBytes(data.length);
+            tileWriter.saveFile(tileSource, tile, new ByteArrayInputStream(data),
+                    System.currentTimeMillis() + TILE_LIFETIME_MS);
+        }
+    }
+
+    /**
+     * Takes one request from the budget of the current window
+     * @return Whether the budget allowed it
+     */
+    private synchronized boolean reserveRequest() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - windowStartMs >= BUDGET_WINDOW_MS) {
+            windowStartMs = now;
+            windowRequests = 0;
+            windowBytes = 0;
+        }
+        if (windowRequests >= MAX_REQUESTS_PER_MINUTE || windowBytes >= MAX_BYTES_PER_MINUTE) {
+            return false;
+        }
+        windowRequests++;
+        return true;
+    }
+
+    private synchronized void addBytes(long count) {
+        windowBytes += count;
+    }
+
+    /**
+     * Counts each tile once, the first time it is visible, as a hit if it was already cached.
+     * A tile out of sight long enough to drop out of {@link #seen} counts again.
+     */
+    private void countVisibleTiles() {
+        OnlineTileSourceBase tileSource = onlineTileSource();
+        if (tileSource == null || executor.isShutdown()) return;
+        int zoom = (int) Math.floor(map.getZoomLevelDouble());
+        BoundingBox box = map.getBoundingBox();
+        double[] northWest = tileXY(box.getLatNorth(), box.getLonWest(), zoom);
+        double[] southEast = tileXY(box.getLatSouth(), box.getLonEast(), zoom);
+        Set<Long> visible = new HashSet<>();
+        for (int x = (int) northWest[0]; x <= (int) southEast[0]; x++) {
+            for (int y = (int) northWest[1]; y <= (int) southEast[1]; y++) {
+                long tile = MapTileIndex.getTileIndex(zoom, x, y);
+                if (seen.put(tile, Boolean.TRUE) == null) {
+                    visible.add(tile);
+                }
+            }
+        }
+        if (visible.isEmpty()) return;
+        executor.execute(() -> {
+            for (long tile : visible) {
+                if (tileWriter.exists(tileSource, tile)) {
+                    visibleHits.incrementAndGet();
+                } else {
+                    visibleMisses.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    private OnlineTileSourceBase onlineTileSource() {
+        ITileSource tileSource = map.getTileProvider().getTileSource();
+        return map.useDataConnection() && tileSource instanceof OnlineTileSourceBase
+                ? (OnlineTileSourceBase) tileSource : null;
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(requests.get(), bytes.get(), alreadyCached.get(), cancelled.get(), overBudget.get(),
+                visibleHits.get(), visibleMisses.get());
+    }
+
+    /**
+     * Stops prefetching and logs the metrics; call when the activity is destroyed
+     */
+    public void release() {
+        corridor = Collections.emptySet();
+        executor.shutdownNow();
+        tileWriter.onDetach();
+        Log.i(TAG, "Tile prefetch: " + getMetrics());
+    }
+
+    /** Fractional tile x and y of a point at a zoom level */
+    private static double[] tileXY(double lat, double lng, int zoom) {
+        double tiles = 1 << zoom;
+        double sinLat = Math.sin(Math.toRadians(Math.max(-85.05112878, Math.min(85.05112878, lat))));
+        double x = (lng + 180) / 360 * tiles;
+        double y = (0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI)) * tiles;
+        return new double[]{x, y};
+    }
+
+    /** Point reached from lat/lng after a distance along a bearing on a sphere */
+    private static double[] destination(double lat, double lng, float bearing, double meters) {
+        double angular = meters / 6371000.0;
+        double theta = Math.toRadians(bearing);
+        double phi1 = Math.toRadians(lat);
+        double lambda1 = Math.toRadians(lng);
+        double phi2 = Math.asin(Math.sin(phi1) * Math.cos(angular) + Math.cos(phi1) * Math.sin(angular) * Math.cos(theta));
+        double lambda2 = lambda1 + Math.atan2(Math.sin(theta) * Math.sin(angular) * Math.cos(phi1),
+                Math.cos(angular) - Math.sin(phi1) * Math.sin(phi2));
+        return new double[]{Math.toDegrees(phi2), Math.toDegrees(lambda2)};
+    }
+}
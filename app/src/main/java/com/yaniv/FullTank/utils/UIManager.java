@@ -14,15 +14,10 @@ import com.google.android.material.floatingactionbutton.ExtendedFloatingActionBu
 import com.yaniv.FullTank.R;
 import com.yaniv.FullTank.adapters.NearbyStationsAdapter;
 import com.yaniv.FullTank.adapters.SearchResultsAdapter;
-import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.query.StationResults;
 
 import org.osmdroid.util.GeoPoint;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-
 /**
  * Manages all UI components and their interactions in the app.
  * Handles search functionality, nearby stations list, and various control buttons.
@@ -31,7 +26,7 @@ public class UIManager {
     private final Activity activity;
     private final LocationHelper locationHelper;
     private final MapManager mapManager;
-    private final GasStationDataManager dataManager;
+    private final StationQueryStore queryStore;
     
     // RecyclerViews and their adapters for displaying station lists
     private RecyclerView searchResultsRecyclerView;
@@ -52,13 +47,14 @@ public class UIManager {
     private boolean isProcessingFuelTypeChange = false; // Flag to prevent rapid clicks
     private boolean isGenericUpdateInProgress = false;
 
-    private String currentSearchQuery = "";  // Store current search query
+    private boolean searchResultsRequested = false;  // Next result reveals or hides the search results
+    private boolean nearbyListOpened = false;  // Next result announces an empty nearby list
 
     public UIManager(Activity activity, LocationHelper locationHelper, MapManager mapManager, GasStationDataManager dataManager) {
         this.activity = activity;
         this.locationHelper = locationHelper;
         this.mapManager = mapManager;
-        this.dataManager = dataManager;
+        this.queryStore = new StationQueryStore(dataManager, MAX_NEARBY_DISTANCE, this::applyResult);
     }
 
     /**
@@ -72,6 +68,7 @@ public class UIManager {
         setupSortFAB();
         setupGenericFAB();
         setupSearchFunctionality();
+        queryStore.setLocation(locationHelper.getLastLocation());
     }
 
     /**
@@ -114,13 +111,9 @@ public class UIManager {
             searchResultsAdapter.setShowingDiesel(showingDiesel);
             nearbyStationsAdapter.setShowingDiesel(showingDiesel);
             
-            // Reapply current filter with new fuel type
-            filterStations(currentSearchQuery);
-            
-            // Update nearby stations with new fuel type
-            if (showingNearbyList) {
-                updateNearbyStations();
-            }
+            // Reapply current filter and nearby list with new fuel type
+            searchResultsRequested = true;
+            queryStore.setShowingDiesel(showingDiesel);
             
             // Reset the processing flag after a short delay to prevent rapid clicks
             fuelTypeFab.postDelayed(() -> isProcessingFuelTypeChange = false, 500);
@@ -139,8 +132,9 @@ public class UIManager {
             }
             
             showingNearbyList = !showingNearbyList;
+            queryStore.setNearbyRequested(showingNearbyList);
             if (showingNearbyList) {
-                updateNearbyStations();
+                nearbyListOpened = true;
                 nearbyStationsRecyclerView.setVisibility(View.VISIBLE);
                 nearbyButton.setText(R.string.nearby_show);
             } else {
@@ -158,14 +152,9 @@ public class UIManager {
         sortFab.setOnClickListener(v -> {
             sortByPrice = !sortByPrice;
             sortFab.setText(sortByPrice ? R.string.sort_by_price : R.string.sort_by_distance);
-            
+
             // Update both lists with new sorting
-            if (showingNearbyList) {
-                updateNearbyStations();  // This will now maintain filtered state
-            }
-            if (searchResultsRecyclerView.getVisibility() == View.VISIBLE) {
-                filterStations(currentSearchQuery);  // Re-apply current filter with new sort
-            }
+            queryStore.setSortByPrice(sortByPrice);
         });
     }
 
@@ -193,7 +182,7 @@ public class UIManager {
             mapManager.setShowingGeneric(showingGeneric);
             
             // Update all views to reflect the new filter
-            updateAllViews();
+            queryStore.setShowingGeneric(showingGeneric);
             
             // Re-enable the button after a short delay
             genericFab.postDelayed(() -> {
@@ -213,42 +202,6 @@ public class UIManager {
         ));
     }
 
-    /**
-     * Updates all views to reflect current filter state
-     */
-    private void updateAllViews() {
-        Location userLocation = locationHelper.getLastLocation();
-        
-        // Update map markers - no need to filter here as MapManager will handle it
-        List<GasStation> stations = currentSearchQuery.isEmpty() ? 
-            dataManager.getAllStations() : 
-            dataManager.filterStations(currentSearchQuery, userLocation, showingDiesel, sortByPrice);
-        mapManager.updateMarkers(stations, userLocation);
-        
-        // Update nearby list if visible
-        if (showingNearbyList) {
-            updateNearbyStations();
-        }
-        
-        // Update search results if visible
-        if (searchResultsRecyclerView.getVisibility() == View.VISIBLE) {
-            filterStations(currentSearchQuery);
-        }
-    }
-
-    private List<GasStation> filterGenericStations(List<GasStation> stations) {
-        if (showingGeneric) {
-            return new ArrayList<>(stations); // Return a copy to prevent modification
-        }
-        List<GasStation> filteredStations = new ArrayList<>();
-        for (GasStation station : stations) {
-            if (station.isFromApi()) {
-                filteredStations.add(station);
-            }
-        }
-        return filteredStations;
-    }
-
     /**
      * Sets up the search functionality with search view and results list
      */
@@ -292,6 +245,7 @@ public class UIManager {
         nearbyStationsAdapter = new NearbyStationsAdapter(station -> {
             nearbyStationsRecyclerView.setVisibility(View.GONE);
             showingNearbyList = false;
+            queryStore.setNearbyRequested(false);
             nearbyButton.setText(R.string.nearby_hide);
             locationHelper.disableFollowLocation();
             mapManager.animateToLocation(
@@ -304,79 +258,68 @@ public class UIManager {
     }
 
     private void filterStations(String query) {
-        currentSearchQuery = query;
-        Location userLocation = locationHelper.getLastLocation();
-        
-        // First get stations based on search query
-        List<GasStation> searchFilteredStations = dataManager.filterStations(
-            query,
-            userLocation,
-            showingDiesel,
-            sortByPrice
-        );
-        
-        // Then filter out generic stations if needed
-        List<GasStation> finalFilteredStations = filterGenericStations(searchFilteredStations);
+        searchResultsRequested = true;
+        queryStore.setQuery(query);
+    }
 
-        // Update map markers
-        mapManager.updateMarkers(finalFilteredStations, userLocation);
+    /**
+     * Feeds a new location fix into the query pipeline
+     */
+    public void onLocationChanged(Location location) {
+        queryStore.setLocation(location);
+    }
 
-        // Update nearby stations list to grey out non-matching stations
-        if (query != null && !query.trim().isEmpty()) {
-            Set<Integer> filteredStationIds = finalFilteredStations.stream()
-                .map(GasStation::getId)
-                .collect(Collectors.toSet());
-            nearbyStationsAdapter.updateDisabledStations(filteredStationIds);
-        } else {
-            nearbyStationsAdapter.clearDisabledStations();
-        }
+    /**
+     * Recomputes all views, e.g. after new station data loaded
+     */
+    public void refresh() {
+        queryStore.refresh();
+    }
 
-        // Update search results visibility
-        if (query == null || query.trim().isEmpty()) {
-            searchResultsRecyclerView.setVisibility(View.GONE);
-        } else if (!finalFilteredStations.isEmpty()) {
-            searchResultsAdapter.setStations(finalFilteredStations);
-            searchResultsRecyclerView.setVisibility(View.VISIBLE);
-        } else {
-            searchResultsRecyclerView.setVisibility(View.GONE);
-        }
+    /**
+     * Stops background query work; call when the activity is destroyed
+     */
+    public void release() {
+        queryStore.release();
     }
 
-    private void updateNearbyStations() {
-        Location userLocation = locationHelper.getLastLocation();
-        if (userLocation == null) return;
+    /**
+     * Applies the latest query result to the map and both lists
+     */
+    private void applyResult(StationQueryStore.Result result) {
+        StationResults matchingStations = result.getMatchingStations();
 
-        // Get nearby stations
-        List<GasStation> nearbyStations = dataManager.getNearbyStations(
-            userLocation,
-            showingDiesel,
-            sortByPrice,
-            MAX_NEARBY_DISTANCE
-        );
+        // Update map markers; a new location alone leaves them as they are
+        if (result.hasStationsChanged()) {
+            mapManager.updateMarkers(matchingStations);
+        }
 
-        // Filter out generic stations if needed
-        List<GasStation> filteredNearbyStations = filterGenericStations(nearbyStations);
+        // Update nearby stations list to grey out non-matching stations
+        if (result.getMatchingRows() != null) {
+            nearbyStationsAdapter.updateDisabledStations(matchingStations.getStore(), result.getMatchingRows());
+        } else {
+            nearbyStationsAdapter.clearDisabledStations();
+        }
 
-        nearbyStationsAdapter.setStations(filteredNearbyStations);
-        
-        // Re-apply current filter if exists
-        if (!currentSearchQuery.trim().isEmpty()) {
-            List<GasStation> searchFilteredStations = filterGenericStations(
-                dataManager.filterStations(
-                    currentSearchQuery,
-                    userLocation,
-                    showingDiesel,
-                    sortByPrice
-                )
-            );
-            Set<Integer> filteredStationIds = searchFilteredStations.stream()
-                .map(GasStation::getId)
-                .collect(Collectors.toSet());
-            nearbyStationsAdapter.updateDisabledStations(filteredStationIds);
+        // Update search results; only a query or fuel change reveals them again
+        boolean searchResultsVisible = searchResultsRecyclerView.getVisibility() == View.VISIBLE;
+        if (searchResultsRequested || searchResultsVisible) {
+            if (result.hasQuery() && !matchingStations.isEmpty()) {
+                searchResultsAdapter.setStations(matchingStations);
+                searchResultsRecyclerView.setVisibility(View.VISIBLE);
+            } else {
+                searchResultsRecyclerView.setVisibility(View.GONE);
+            }
         }
-        
-        if (filteredNearbyStations.isEmpty()) {
-            Toast.makeText(activity, "No stations found within " + MAX_NEARBY_DISTANCE / 1000 + "km", Toast.LENGTH_SHORT).show();
+        searchResultsRequested = false;
+
+        StationResults nearbyStations = result.getNearbyStations();
+        if (showingNearbyList && nearbyStations != null) {
+            nearbyStationsAdapter.setStations(nearbyStations);
+            if (nearbyListOpened && nearbyStations.isEmpty()) {
+                Toast.makeText(activity, "No stations found within " + MAX_NEARBY_DISTANCE / 1000 + "km", Toast.LENGTH_SHORT).show();
+            }
+            nearbyListOpened = false;
         }
     }
 
@@ -386,6 +329,7 @@ public class UIManager {
     public void closeNearbyList() {
         if (showingNearbyList) {
             showingNearbyList = false;
+            queryStore.setNearbyRequested(false);
             nearbyStationsRecyclerView.setVisibility(View.GONE);
             Button nearbyButton = activity.findViewById(R.id.nearby_fab);
             nearbyButton.setText(R.string.nearby_hide);
@@ -0,0 +1,94 @@
+package com.yaniv.FullTank.utils;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.location.Location;
+
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.TileSystem;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.overlay.mylocation.IMyLocationProvider;
+import org.osmdroid.views.overlay.mylocation.MyLocationNewOverlay;
+
+/**
+ * Draws the user's location as a blue dot with a white border and a translucent
+ * accuracy ring.
+ * Every object the draw needs is allocated up front, and the ring's radius in
+ * pixels is only recomputed when the fix or the zoom level changes, so drawing
+ * a frame allocates nothing.
+ */
+public class UserLocationOverlay extends MyLocationNewOverlay {
+    private final Painter painter = new Painter();
+    private final GeoPoint fixPoint = new GeoPoint(0.0, 0.0);
+    private final Point fixPixel = new Point();
+
+    public UserLocationOverlay(IMyLocationProvider provider, MapView map) {
+        super(provider, map);
+    }
+
+    @Override
+    public void draw(Canvas canvas, MapView mapView, boolean shadow) {
+        if (shadow) return;
+
+        Location lastFix = getLastFix();
+        if (lastFix == null || mapView == null) return;
+        fixPoint.setCoords(lastFix.getLatitude(), lastFix.getLongitude());
+        mapView.getProjection().toPixels(fixPoint, fixPixel);
+        painter.draw(canvas, fixPixel.x, fixPixel.y, lastFix, mapView.getZoomLevelDouble());
+    }
+
+    /**
+     * The per-frame part of the overlay: paints the dot and ring of a fix at a
+     * screen position. Kept apart from the osmdroid overlay so its frame cost can
+     * be measured on the JVM.
+     */
+    static final class Painter {
+        private static final float DOT_RADIUS = 20;
+        private static final float BORDER_RADIUS = 25;
+        /** The ring is drawn larger than the reported accuracy */
+        private static final float ACCURACY_RING_SCALE = 1.5f;
+
+        private final Paint accuracyPaint = new Paint();
+        private final Paint borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final Paint dotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        // Accuracy ring radius and what it was computed for
+        private float accuracyRadius;
+        private Location accuracyFix;
+        private double accuracyZoom = Double.NaN;
+
+        Painter() {
+            accuracyPaint.setColor(Color.argb(40, 0, 0, 255));
+            accuracyPaint.setStyle(Paint.Style.FILL);
+            borderPaint.setColor(Color.WHITE);
+            borderPaint.setStyle(Paint.Style.FILL);
+            dotPaint.setColor(Color.rgb(0, 122, 255));
+            dotPaint.setStyle(Paint.Style.FILL);
+        }
+
+        void draw(Canvas canvas, float x, float y, Location fix, double zoom) {
+            // Draw accuracy circle
+            if (fix.hasAccuracy()) {
+                if (fix != accuracyFix || zoom != accuracyZoom) {
+                    accuracyRadius = (float) (fix.getAccuracy() / TileSystem.GroundResolution(fix.getLatitude(), zoom));
+                    accuracyFix = fix;
+                    accuracyZoom = zoom;
+                }
+                canvas.drawCircle(x, y, accuracyRadius * ACCURACY_RING_SCALE, accuracyPaint);
+            }
+
+            // Outer circle (white border), then inner circle (blue fill)
+            canvas.drawCircle(x, y, BORDER_RADIUS, borderPaint);
+            canvas.drawCircle(x, y, DOT_RADIUS, dotPaint);
+        }
+
+        /**
+         * @return Radius of the accuracy ring before scaling, in pixels, as of the last draw
+         */
+        float accuracyRadius() {
+            return accuracyRadius;
+        }
+    }
+}
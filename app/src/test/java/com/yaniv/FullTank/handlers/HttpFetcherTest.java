@@ -0,0 +1,130 @@
+package com.yaniv.FullTank.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that callers sharing one download are each held to their own body limit,
+ * and that a streamed body is bounded and its read errors reach the caller.
+ */
+public class HttpFetcherTest {
+    private static final int BODY_BYTES = 5_000;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    /** Holds responses back until every caller has joined the download */
+    private final CountDownLatch respond = new CountDownLatch(1);
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try {
+                respond.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Chunked, so the limit is hit while reading rather than from Content-Length
+            exchange.getResponseHeaders().add("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(new byte[BODY_BYTES]);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void sharedDownloadIsReadUpToTheLargestLimit() throws Exception {
+        String url = url("/shared");
+        CompletableFuture<HttpFetcher.Body> small = HttpFetcher.getInstance().fetch(url, BODY_BYTES / 5);
+        CompletableFuture<HttpFetcher.Body> large = HttpFetcher.getInstance().fetch(url, BODY_BYTES * 2);
+        respond.countDown();
+
+        assertEquals(BODY_BYTES, large.get(10, TimeUnit.SECONDS).getBytes().length);
+        assertTooLarge(small);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void bodyOverEveryLimitFailsEveryCaller() throws Exception {
+        String url = url("/over");
+        CompletableFuture<HttpFetcher.Body> first = HttpFetcher.getInstance().fetch(url, BODY_BYTES / 5);
+        CompletableFuture<HttpFetcher.Body> second = HttpFetcher.getInstance().fetch(url, BODY_BYTES / 2);
+        respond.countDown();
+
+        assertTooLarge(first);
+        assertTooLarge(second);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void streamedBodyIsParsedWhole() throws Exception {
+        respond.countDown();
+        CompletableFuture<Integer> chars = HttpFetcher.getInstance().stream(url("/stream"), BODY_BYTES,
+                HttpFetcherTest::count);
+        assertEquals(BODY_BYTES, (int) chars.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void streamedBodyOverLimitFailsEvenIfParserSwallowsIt() throws Exception {
+        respond.countDown();
+        CompletableFuture<Integer> chars = HttpFetcher.getInstance().stream(url("/stream-over"), BODY_BYTES / 5,
+                body -> {
+                    try {
+                        return count(body);
+                    } catch (IOException e) {
+                        return -1; // like a parser that logs and returns what it has
+                    }
+                });
+        assertTooLarge(chars);
+    }
+
+    private static int count(Reader body) throws IOException {
+        int chars = 0;
+        char[] buffer = new char[512];
+        for (int read; (read = body.read(buffer)) != -1; ) {
+            chars += read;
+        }
+        return chars;
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private static void assertTooLarge(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the body to be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("Response body larger than"));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.yaniv.FullTank.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.location.Location;
+
+import org.junit.Test;
+import org.osmdroid.util.TileSystem;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that drawing the location dot costs no allocations and little time per
+ * frame, and that the accuracy ring follows the fix and the zoom level.
+ */
+public class UserLocationOverlayTest {
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int FRAMES = 100_000;
+
+    @Test
+    public void drawingFramesAllocatesNothing() {
+        UserLocationOverlay.Painter painter = new UserLocationOverlay.Painter();
+        CountingCanvas canvas = new CountingCanvas();
+        Fix fix = new Fix(32.08, 34.78, 15);
+        drawFrames(painter, canvas, fix, WARMUP_FRAMES);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        canvas.circles = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        drawFrames(painter, canvas, fix, FRAMES);
+        long nanosPerFrame = (System.nanoTime() - start) / FRAMES;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        assertEquals(3L * FRAMES, canvas.circles);
+        // Less than a byte per frame leaves room for the counter itself, not for an object
+        assertTrue(allocated + " bytes over " + FRAMES + " frames", allocated < FRAMES);
+        assertTrue(nanosPerFrame + " ns per frame", nanosPerFrame < 50_000);
+    }
+
+    @Test
+    public void accuracyRingFollowsFixAndZoom() {
+        UserLocationOverlay.Painter painter = new UserLocationOverlay.Painter();
+        CountingCanvas canvas = new CountingCanvas();
+        Fix fix = new Fix(32.08, 34.78, 30);
+        painter.draw(canvas, 0, 0, fix, 16);
+        assertEquals(30 / TileSystem.GroundResolution(32.08, 16), painter.accuracyRadius(), 1e-3);
+
+        painter.draw(canvas, 0, 0, fix, 17.5);
+        assertEquals(30 / TileSystem.GroundResolution(32.08, 17.5), painter.accuracyRadius(), 1e-3);
+
+        Fix next = new Fix(32.08, 34.78, 5);
+        painter.draw(canvas, 0, 0, next, 17.5);
+        assertEquals(5 / TileSystem.GroundResolution(32.08, 17.5), painter.accuracyRadius(), 1e-3);
+    }
+
+    @Test
+    public void fixWithoutAccuracyDrawsOnlyTheDot() {
+        CountingCanvas canvas = new CountingCanvas();
+        new UserLocationOverlay.Painter().draw(canvas, 0, 0, new Fix(32.08, 34.78, -1), 16);
+        assertEquals(2, canvas.circles);
+    }
+
+    private static void drawFrames(UserLocationOverlay.Painter painter, Canvas canvas, Location fix, int frames) {
+        for (int i = 0; i < frames; i++) {
+            // Panning moves the dot every frame, zoom changes now and then
+            painter.draw(canvas, i % 1080, i % 1920, fix, 15 + (i >> 12 & 3));
+        }
+    }
+
+    /** Canvas that only counts the circles drawn on it */
+    private static final class CountingCanvas extends Canvas {
+        int circles;
+
+        @Override
+        public void drawCircle(float cx, float cy, float radius, Paint paint) {
+            circles++;
+        }
+    }
+
+    /** Fix with fixed coordinates, and an accuracy in meters unless it is negative */
+    private static final class Fix extends Location {
+        private final double latitude;
+        private final double longitude;
+        private final float accuracy;
+
+        Fix(double latitude, double longitude, float accuracy) {
+            super("test");
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+        }
+
+        @Override
+        public double getLatitude() {
+            return latitude;
+        }
+
+        @Override
+        public double getLongitude() {
+            return longitude;
+        }
+
+        @Override
+        public boolean hasAccuracy() {
+            return accuracy >= 0;
+        }
+
+        @Override
+        public float getAccuracy() {
+            return accuracy;
+        }
+    }
+}
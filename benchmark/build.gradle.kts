@@ -0,0 +1,42 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Sources and tests hold Hebrew literals; don't depend on the host's default charset
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    jmh(project(":core"))
+    jmh(libs.gson)
+    jmh(libs.jsoup)
+}
+
+// ./gradlew :benchmark:jmh
+// Narrow the run with -PjmhIncludes=QueryBenchmark (regex over benchmark names)
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    // Throughput plus sampled latency, which reports p50/p90/p99/p99.9
+    benchmarkMode = listOf("thrpt", "sample")
+    timeUnit = "us"
+    profilers = listOf("gc")
+    fork = 1
+    warmupIterations = 3
+    warmup = "2s"
+    iterations = 5
+    timeOnIteration = "2s"
+    resultFormat = "JSON"
+    findProperty("jmhIncludes")?.let { includes = listOf(it.toString()) }
+    // Captured payloads the parser benchmarks run against
+    jvmArgsAppend = listOf(
+        "-Dfulltank.tenResponse=${rootProject.file("response.json")}",
+        "-Dfulltank.genericStations=${rootProject.file("app/data/gasstations.json")}"
+    )
+}
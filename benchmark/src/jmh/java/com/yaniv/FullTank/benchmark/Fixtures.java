@@ -0,0 +1,122 @@
+package com.yaniv.FullTank.benchmark;
+
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks: captured payloads from the repository and
+ * seeded synthetic stations and pages, so runs are comparable across machines.
+ */
+final class Fixtures {
+    static final long SEED = 42;
+
+    /** Bounding box of Israel, where all generated stations fall */
+    static final double MIN_LAT = 29.5;
+    static final double MAX_LAT = 33.3;
+    static final double MIN_LNG = 34.3;
+    static final double MAX_LNG = 35.9;
+
+    static final String[] COMPANIES = {"פז", "דלק", "סונול", "דור אלון", "טן", "yellow", "מנטה", "סדש"};
+    static final String[] CITIES = {"תל אביב", "ירושלים", "חיפה", "באר שבע", "אשדוד", "נתניה",
+            "ראשון לציון", "פתח תקווה", "חולון", "רמת גן", "אילת", "טבריה", "עפולה", "כרמיאל"};
+    static final String[] STREETS = {"הרצל", "ז'בוטינסקי", "דרך השלום", "ויצמן", "בן גוריון",
+            "העצמאות", "רוטשילד", "אלנבי", "דרך חברון", "שדרות ירושלים", "המלאכה", "התעשייה"};
+
+    /** Query strings typed into the search box, from one to many matches */
+    static final String[] QUERIES = {"הרצל", "פז", "תל אביב", "דרך", "ה", "ויצמן 1", "ירושלים"};
+
+    private Fixtures() {
+    }
+
+    static String tenResponse() throws IOException {
+        return read(System.getProperty("fulltank.tenResponse", "response.json"));
+    }
+
+    static Path genericStations() {
+        return Paths.get(System.getProperty("fulltank.genericStations", "app/data/gasstations.json"));
+    }
+
+    private static String read(String path) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates stations spread uniformly over Israel.
+     */
+    static List<GasStation> stations(int count) {
+        Random random = new Random(SEED);
+        List<GasStation> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String address = STREETS[random.nextInt(STREETS.length)] + " " + (1 + random.nextInt(200));
+            String city = CITIES[random.nextInt(CITIES.length)];
+            String company = COMPANIES[random.nextInt(COMPANIES.length)];
+            GPS gps = randomPoint(random);
+            // Some stations have no 98 price, as in the real data
+            double petrol95 = 6.5 + random.nextInt(150) / 100.0;
+            double petrol98 = random.nextInt(4) == 0 ? 0 : petrol95 + 0.6;
+            double diesel = 6.8 + random.nextInt(150) / 100.0;
+            stations.add(new GasStation(i, address, city, company, gps, null,
+                    new FuelPrices(petrol98, petrol95, diesel), random.nextBoolean()));
+        }
+        return stations;
+    }
+
+    /**
+     * Generates query origins; each benchmark invocation cycles through them.
+     */
+    static GPS[] origins(int count) {
+        Random random = new Random(SEED + 1);
+        GPS[] origins = new GPS[count];
+        for (int i = 0; i < count; i++) {
+            origins[i] = randomPoint(random);
+        }
+        return origins;
+    }
+
+    private static GPS randomPoint(Random random) {
+        return new GPS(MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT),
+                MIN_LNG + random.nextDouble() * (MAX_LNG - MIN_LNG));
+    }
+
+    /**
+     * Generates a Mika listing page with the structure the crawler reads:
+     * an h2 link per station and the company logo next to it.
+     */
+    static String mikaListing(int count) {
+        Random random = new Random(SEED);
+        StringBuilder html = new StringBuilder("<html><body><div class=\"content\">");
+        for (int i = 0; i < count; i++) {
+            String company = COMPANIES[random.nextInt(COMPANIES.length)];
+            String title = (i % 10 == 0 ? "חדש! " : "") + STREETS[random.nextInt(STREETS.length)] + " "
+                    + (1 + random.nextInt(200)) + ", " + CITIES[random.nextInt(CITIES.length)];
+            html.append("<div class=\"station\"><img class=\"alignnone size-full\" alt=\"").append(company)
+                    .append("\" src=\"/logo.png\"><h2><a href=\"https://mika.org.il/station/").append(i)
+                    .append("/\">").append(title).append("</a></h2><p>תחנת דלק ").append(company)
+                    .append("</p></div>");
+        }
+        return html.append("</div></body></html>").toString();
+    }
+
+    /**
+     * Generates a Mika station page with opening hours and cash prices.
+     */
+    static String mikaStationPage() {
+        return "<html><body><div class=\"station-info\">"
+                + "<div class=\"info activity-hours\"><span class=\"sub-title\">א'-ה' 06:00-22:00, ו' 06:00-15:00</span></div>"
+                + "<div class=\"info cash\"><ul class=\"list\">"
+                + "<li><span class=\"sub-title\">בנזין 95</span><span class=\"value\">7.29 ₪</span></li>"
+                + "<li><span class=\"sub-title\">בנזין 98</span><span class=\"value\">8.41 ₪</span></li>"
+                + "<li><span class=\"sub-title\">סולר</span><span class=\"value\">7.62 ₪</span></li>"
+                + "</ul></div></div></body></html>";
+    }
+}
@@ -0,0 +1,133 @@
+package com.yaniv.FullTank.benchmark;
+
+import com.yaniv.FullTank.dm.FuelType;
+import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.map.MarkerSet;
+import com.yaniv.FullTank.query.StationQueryEngine;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Marker churn per map update: keyed reconciliation against rebuilding every
+ * marker, for the updates the UI issues (fuel toggle, location fix, typing).
+ * Markers here are trivial to create, so the times show the bookkeeping cost;
+ * on a device the created/removed counters dominate, since each real marker
+ * allocates an icon drawable and inflates an info window. Counters are totals
+ * per iteration; divide by updates for the churn of one update.
+ */
+@State(Scope.Thread)
+public class MarkerChurnBenchmark {
+    @Param({"1000", "10000"})
+    public int stations;
+
+    /** Stand-in for a map marker */
+    static final class FakeMarker {
+        final int id;
+        long style;
+
+        FakeMarker(int id, long style) {
+            this.id = id;
+            this.style = style;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Churn {
+        public long created;
+        public long removed;
+        public long restyled;
+        public long updates;
+
+        void record(MarkerSet.Changes<FakeMarker> changes) {
+            created += changes.getAdded().size();
+            removed += changes.getRemoved().size();
+            restyled += changes.getRestyled();
+            updates++;
+        }
+    }
+
+    private final MarkerSet.Binder<GasStation, FakeMarker> binder = new MarkerSet.Binder<GasStation, FakeMarker>() {
+        @Override
+        public FakeMarker create(GasStation station, long style) {
+            return new FakeMarker(station.getId(), style);
+        }
+
+        @Override
+        public void update(FakeMarker marker, GasStation station, long style, boolean restyle) {
+            marker.style = style;
+        }
+    };
+
+    private List<GasStation> all;
+    /** Results of successive prefixes of a typed query */
+    private List<List<GasStation>> typed;
+    private MarkerSet<GasStation, FakeMarker> markers;
+    private boolean diesel;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StationQueryEngine engine = new StationQueryEngine(Fixtures.stations(stations));
+        all = new ArrayList<>(engine.getAllStations());
+        typed = new ArrayList<>();
+        String query = "שדרות ירושלים 1";
+        for (int length = 0; length <= query.length(); length++) {
+            typed.add(new ArrayList<>(engine.filterStations(query.substring(0, length), null, FuelType.PETROL_95, false)));
+        }
+        markers = new MarkerSet<>(GasStation::getId, binder);
+        markers.update(all, this::styleOf);
+    }
+
+    private long styleOf(GasStation station) {
+        double price = diesel ? station.getFuel_prices().getDiesel() : station.getFuel_prices().getPetrol_95();
+        return Math.round(price * 100) << 1 | (diesel ? 1 : 0);
+    }
+
+    @Benchmark
+    public MarkerSet.Changes<FakeMarker> fuelToggle(Churn churn) {
+        diesel = !diesel;
+        MarkerSet.Changes<FakeMarker> changes = markers.update(all, this::styleOf);
+        churn.record(changes);
+        return changes;
+    }
+
+    @Benchmark
+    public MarkerSet.Changes<FakeMarker> locationFix(Churn churn) {
+        MarkerSet.Changes<FakeMarker> changes = markers.update(all, this::styleOf);
+        churn.record(changes);
+        return changes;
+    }
+
+    @Benchmark
+    public MarkerSet.Changes<FakeMarker> typing(Churn churn) {
+        // Walks the prefixes forward and back, one keystroke per invocation
+        int step = next++ % (2 * typed.size() - 2);
+        int index = step < typed.size() ? step : 2 * typed.size() - 2 - step;
+        MarkerSet.Changes<FakeMarker> changes = markers.update(typed.get(index), this::styleOf);
+        churn.record(changes);
+        return changes;
+    }
+
+    @Benchmark
+    public List<FakeMarker> rebuildAll(Churn churn) {
+        // What every update cost before: drop everything and create a marker per station
+        List<FakeMarker> rebuilt = new ArrayList<>(all.size());
+        for (GasStation station : all) {
+            rebuilt.add(binder.create(station, styleOf(station)));
+        }
+        churn.removed += all.size();
+        churn.created += all.size();
+        churn.updates++;
+        return rebuilt;
+    }
+}
@@ -0,0 +1,98 @@
+package com.yaniv.FullTank.benchmark;
+
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.parsers.GenericStationsParser;
+import com.yaniv.FullTank.parsers.MikaParser;
+import com.yaniv.FullTank.parsers.StationAsset;
+import com.yaniv.FullTank.parsers.TenParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ingestion: one full parse of each source, as done on a data refresh.
+ */
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    private static final int MIKA_LISTING_SIZE = 300;
+
+    private String tenResponse;
+    private String mikaListing;
+    private String mikaStationPage;
+    private ByteBuffer genericStationsAsset;
+    private final FuelPrices genericPrices = new FuelPrices(0, 7.0, 7.5);
+
+    @Setup
+    public void setUp() throws IOException {
+        tenResponse = Fixtures.tenResponse();
+        mikaListing = Fixtures.mikaListing(MIKA_LISTING_SIZE);
+        mikaStationPage = Fixtures.mikaStationPage();
+        List<GasStation> genericStations;
+        try (Reader reader = Files.newBufferedReader(Fixtures.genericStations())) {
+            genericStations = GenericStationsParser.parse(reader, genericPrices);
+        }
+        ByteArrayOutputStream asset = new ByteArrayOutputStream();
+        StationAsset.write(genericStations, asset);
+        genericStationsAsset = ByteBuffer.wrap(asset.toByteArray());
+    }
+
+    /**
+     * Baseline: the whole payload built into a Gson tree before stations are read
+     */
+    @Benchmark
+    public List<GasStation> tenApiTree() {
+        return TreeTenParser.parse(tenResponse);
+    }
+
+    /**
+     * Streamed straight from the payload, only the station and fuel type arrays read
+     */
+    @Benchmark
+    public List<GasStation> tenApi() {
+        List<GasStation> stations = new ArrayList<>();
+        TenParser.parse(new StringReader(tenResponse), stations::add);
+        return stations;
+    }
+
+    @Benchmark
+    public FuelPrices tenRegulatedPrices() {
+        return TenParser.parseRegulatedPrices(tenResponse);
+    }
+
+    @Benchmark
+    public List<GasStation> genericStations() throws IOException {
+        try (Reader reader = Files.newBufferedReader(Fixtures.genericStations())) {
+            return GenericStationsParser.parse(reader, genericPrices);
+        }
+    }
+
+    /**
+     * The same stations from the asset precompiled at build time
+     */
+    @Benchmark
+    public List<GasStation> genericStationsAsset() throws IOException {
+        return StationAsset.read(genericStationsAsset, genericPrices);
+    }
+
+    @Benchmark
+    public List<MikaParser.Listing> mikaListing() {
+        return MikaParser.parseListing(mikaListing);
+    }
+
+    @Benchmark
+    public MikaParser.StationPage mikaStationPage() {
+        return MikaParser.parseStationPage(mikaStationPage);
+    }
+}
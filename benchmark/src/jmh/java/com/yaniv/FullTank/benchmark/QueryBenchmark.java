@@ -0,0 +1,85 @@
+package com.yaniv.FullTank.benchmark;
+
+import com.yaniv.FullTank.dm.FuelType;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.index.PriceIndex;
+import com.yaniv.FullTank.query.StationQueryEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Queries the UI runs on every keystroke, location fix and sort toggle,
+ * over synthetic snapshots of increasing size.
+ */
+@State(Scope.Thread)
+public class QueryBenchmark {
+    /** Radius of the nearby list */
+    private static final float NEARBY_RADIUS = 15_000f;
+
+    @Param({"1000", "10000", "100000"})
+    public int stations;
+
+    private StationQueryEngine engine;
+    private PriceIndex priceIndex;
+    private int[] allRows;
+    private GPS[] origins;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<GasStation> data = Fixtures.stations(stations);
+        engine = new StationQueryEngine(data);
+        priceIndex = PriceIndex.build(engine.getStore());
+        allRows = new int[stations];
+        for (int i = 0; i < stations; i++) {
+            allRows[i] = i;
+        }
+        origins = Fixtures.origins(256);
+    }
+
+    private int nextIndex() {
+        return next++ & 0xff;
+    }
+
+    @Benchmark
+    public List<GasStation> filterByDistance() {
+        int i = nextIndex();
+        return engine.filterStations(Fixtures.QUERIES[i % Fixtures.QUERIES.length], origins[i], FuelType.PETROL_95, false);
+    }
+
+    @Benchmark
+    public List<GasStation> filterByPrice() {
+        int i = nextIndex();
+        return engine.filterStations(Fixtures.QUERIES[i % Fixtures.QUERIES.length], origins[i], FuelType.PETROL_95, true);
+    }
+
+    @Benchmark
+    public List<GasStation> nearbyByDistance() {
+        return engine.getNearbyStations(origins[nextIndex()], FuelType.PETROL_95, false, NEARBY_RADIUS);
+    }
+
+    @Benchmark
+    public List<GasStation> nearbyByPrice() {
+        return engine.getNearbyStations(origins[nextIndex()], FuelType.DIESEL, true, NEARBY_RADIUS);
+    }
+
+    @Benchmark
+    public int[] sortAllByPrice() {
+        int[] rows = allRows.clone();
+        priceIndex.sortByPrice(rows, FuelType.PETROL_95);
+        return rows;
+    }
+
+    @Benchmark
+    public StationQueryEngine buildSnapshot() {
+        return new StationQueryEngine(engine.getAllStations());
+    }
+}
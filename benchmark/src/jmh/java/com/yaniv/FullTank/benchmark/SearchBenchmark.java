@@ -0,0 +1,93 @@
+package com.yaniv.FullTank.benchmark;
+
+import com.yaniv.FullTank.index.SearchIndex;
+import com.yaniv.FullTank.index.StationStore;
+import com.yaniv.FullTank.query.SearchCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Trigram search against the linear contains scan it replaced, and a typed
+ * query (every prefix forward, then backspaced) with and without the refinement cache.
+ */
+@State(Scope.Thread)
+public class SearchBenchmark {
+    /** Typed one character at a time, then erased */
+    private static final String TYPED_QUERY = "שדרות ירושלים 1";
+
+    @Param({"1000", "10000", "100000"})
+    public int stations;
+
+    private StationStore store;
+    private SearchIndex index;
+    private String[] haystacks;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = StationStore.from(Fixtures.stations(stations));
+        index = SearchIndex.build(store);
+        haystacks = new String[stations];
+        for (int row = 0; row < stations; row++) {
+            haystacks[row] = SearchIndex.normalize(store.address(row)) + "\n"
+                    + SearchIndex.normalize(store.company(row)) + "\n" + SearchIndex.normalize(store.city(row));
+        }
+        queries = new String[Fixtures.QUERIES.length];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = SearchIndex.normalize(Fixtures.QUERIES[i]);
+        }
+    }
+
+    private String nextQuery() {
+        return Fixtures.QUERIES[next++ % Fixtures.QUERIES.length];
+    }
+
+    @Benchmark
+    public int[] index() {
+        return index.search(nextQuery());
+    }
+
+    @Benchmark
+    public int scan() {
+        String query = queries[next++ % queries.length];
+        int matches = 0;
+        for (String haystack : haystacks) {
+            if (haystack.contains(query)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int typingUncached() {
+        int matches = 0;
+        for (int length = 1; length <= TYPED_QUERY.length(); length++) {
+            matches += index.search(TYPED_QUERY.substring(0, length)).length;
+        }
+        for (int length = TYPED_QUERY.length() - 1; length > 0; length--) {
+            matches += index.search(TYPED_QUERY.substring(0, length)).length;
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int typingCached() {
+        // A fresh cache per session, as after a data load
+        SearchCache cache = new SearchCache(index);
+        int matches = 0;
+        for (int length = 1; length <= TYPED_QUERY.length(); length++) {
+            matches += cache.search(TYPED_QUERY.substring(0, length)).length;
+        }
+        for (int length = TYPED_QUERY.length() - 1; length > 0; length--) {
+            matches += cache.search(TYPED_QUERY.substring(0, length)).length;
+        }
+        return matches;
+    }
+}
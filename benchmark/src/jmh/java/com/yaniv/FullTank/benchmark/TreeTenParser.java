@@ -0,0 +1,135 @@
+package com.yaniv.FullTank.benchmark;
+
+import static java.lang.Double.max;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The Ten payload parse as it was before {@link com.yaniv.FullTank.parsers.TenParser}
+ * streamed: the whole body as a String, built into a Gson tree, then walked.
+ * Kept as the baseline of {@link ParserBenchmark}.
+ */
+final class TreeTenParser {
+    private static final Logger LOG = Logger.getLogger(TreeTenParser.class.getName());
+
+    /** Fuel type codes used by the Ten API */
+    private static final String CODE_DIESEL = "0";
+    private static final String CODE_95 = "5";
+    private static final String CODE_98 = "6";
+
+    private TreeTenParser() {
+    }
+
+    /**
+     * Parses the stations of a payload.
+     * On malformed data the stations parsed so far are returned and the error is logged.
+     */
+    static List<GasStation> parse(String json) {
+        List<GasStation> stations = new ArrayList<>();
+        FuelPrices regulatedPrices = new FuelPrices(0, 0, 0);
+        try {
+            JsonObject data = JsonParser.parseString(json).getAsJsonObject().getAsJsonObject("data");
+            readRegulatedPrices(data, regulatedPrices);
+
+            JsonArray stationsArr = data.getAsJsonArray("stationsArr");
+            for (JsonElement element : stationsArr) {
+                JsonObject station = element.getAsJsonObject();
+
+                String address = station.get("full_address").getAsString();
+
+                JsonObject gpsObj = station.getAsJsonObject("gps");
+                double lat = gpsObj.get("lat").getAsDouble();
+                double lng = gpsObj.get("lng").getAsDouble();
+
+                StringBuilder openingHours = new StringBuilder();
+                JsonObject openingHoursObj = station.getAsJsonObject("opening_hours");
+
+                for (Map.Entry<String, JsonElement> entry : openingHoursObj.entrySet()) {
+                    String day = entry.getKey();
+                    JsonObject dayObj = entry.getValue().getAsJsonObject();
+                    JsonArray hoursArr = dayObj.getAsJsonArray("hoursArr");
+
+                    if (hoursArr != null && !hoursArr.isEmpty()) {
+                        JsonObject hours = hoursArr.get(0).getAsJsonObject();
+                        String fromHour = hours.get("from_hour").getAsString();
+                        String toHour = hours.get("to_hour").getAsString();
+
+                        if (!fromHour.equals("0") || !toHour.equals("0")) {
+                            openingHours.append("Day ").append(day)
+                                    .append(": ").append(fromHour)
+                                    .append("-").append(toHour)
+                                    .append(", ");
+                        }
+                    }
+                }
+
+                JsonObject pricesObj = station.getAsJsonObject("fuel_prices");
+                JsonObject byFuelType = pricesObj.getAsJsonObject("by_fuel_type");
+
+                double petrol95 = 0.0;
+                double petrol98 = 0.0;
+                double diesel = 0.0;
+
+                if (byFuelType.has(CODE_95)) {
+                    JsonObject fuel95 = byFuelType.getAsJsonObject(CODE_95);
+                    petrol95 = max(priceOf(fuel95, "self_service"), priceOf(fuel95, "cash"));
+                    if (petrol95 == 0.0) {
+                        petrol95 = regulatedPrices.getPetrol_95();
+                    }
+                }
+                if (byFuelType.has(CODE_98)) {
+                    petrol98 = priceOf(byFuelType.getAsJsonObject(CODE_98), "self_service");
+                }
+                if (byFuelType.has(CODE_DIESEL)) {
+                    JsonObject fuelDiesel = byFuelType.getAsJsonObject(CODE_DIESEL);
+                    diesel = max(priceOf(fuelDiesel, "self_service"), priceOf(fuelDiesel, "cash"));
+                    if (diesel == 0.0) {
+                        diesel = regulatedPrices.getDiesel();
+                    }
+                }
+
+                // Unique id from the API
+                int id = Integer.parseInt(station.get("id").getAsString());
+
+                stations.add(new GasStation(id, address, "טן", new GPS(lat, lng), openingHours.toString(),
+                        new FuelPrices(petrol98, petrol95, diesel), true));
+            }
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error parsing station data", e);
+        }
+        return stations;
+    }
+
+    /**
+     * @return The price of a service type, 0 if missing or null
+     */
+    private static double priceOf(JsonObject fuel, String serviceType) {
+        JsonElement price = fuel.get(serviceType);
+        return price == null || price.isJsonNull() ? 0.0 : price.getAsDouble();
+    }
+
+    private static void readRegulatedPrices(JsonObject data, FuelPrices into) {
+        if (!data.has("fuel_typesArr")) return;
+        for (JsonElement fuelElement : data.getAsJsonArray("fuel_typesArr")) {
+            JsonObject fuelType = fuelElement.getAsJsonObject();
+            String code = fuelType.get("code").getAsString();
+            if (code.equals(CODE_95) && fuelType.has("regulated_price_self_service")) {
+                into.setPetrol_95(fuelType.get("regulated_price_self_service").getAsDouble());
+            } else if (code.equals(CODE_DIESEL) && fuelType.has("regulated_price_self_service")) {
+                into.setDiesel(fuelType.get("regulated_price_self_service").getAsDouble());
+            }
+        }
+    }
+}
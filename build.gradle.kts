@@ -2,4 +2,5 @@
 plugins {
     alias(libs.plugins.android.application) apply false
     alias(libs.plugins.google.gms.google.services) apply false
-}
\ No newline at end of file
+    alias(libs.plugins.jmh) apply false
+}
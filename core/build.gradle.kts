@@ -0,0 +1,20 @@
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Sources and tests hold Hebrew literals; don't depend on the host's default charset
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    implementation(libs.gson)
+    implementation(libs.jsoup)
+
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,33 @@
+package com.yaniv.FullTank.dm;
+
+/**
+ * The fuel types the app can display and rank stations by.
+ */
+public enum FuelType {
+    PETROL_95,
+    PETROL_98,
+    DIESEL;
+
+    /**
+     * @param prices The station's prices
+     * @return The price of this fuel type in ₪
+     */
+    public double priceOf(FuelPrices prices) {
+        switch (this) {
+            case PETROL_98:
+                return prices.getPetrol_98();
+            case DIESEL:
+                return prices.getDiesel();
+            default:
+                return prices.getPetrol_95();
+        }
+    }
+
+    /**
+     * Maps the UI's 95/diesel toggle to a fuel type
+     * @param showingDiesel Whether diesel prices are displayed
+     */
+    public static FuelType of(boolean showingDiesel) {
+        return showingDiesel ? DIESEL : PETROL_95;
+    }
+}
@@ -12,6 +12,8 @@ public class GasStation {
     private final String company;
     /** Physical address of the gas station */
     private final String address;
+    /** City or town of the station, empty when the source does not provide one */
+    private final String city;
     /** Geographic coordinates of the station */
     private final GPS gps;
     /** Operating hours of the station */
@@ -31,6 +33,7 @@ public class GasStation {
         this.id = 0;
         this.company = "";
         this.address = "";
+        this.city = "";
         this.gps = new GPS(0, 0);
         this.opening_hours = "";
         this.fuel_prices = new FuelPrices(0, 0, 0);
@@ -49,8 +52,25 @@ public class GasStation {
      * @param isFromApi Whether the station data is from API/Crawling (true) or Generic (false)
      */
     public GasStation(int id, String address, String company, GPS gps, String opening_hours, FuelPrices prices, boolean isFromApi) {
+        this(id, address, "", company, gps, opening_hours, prices, isFromApi);
+    }
+
+    /**
+     * Constructs a new GasStation with all required information and its city.
+     *
+     * @param id Unique identifier for the station
+     * @param address Physical location of the station
+     * @param city City or town of the station
+     * @param company Name of the gas station company
+     * @param gps Geographic coordinates
+     * @param opening_hours Operating hours
+     * @param prices Current fuel prices
+     * @param isFromApi Whether the station data is from API/Crawling (true) or Generic (false)
+     */
+    public GasStation(int id, String address, String city, String company, GPS gps, String opening_hours, FuelPrices prices, boolean isFromApi) {
         this.id = id;
         this.address = address;
+        this.city = city;
         this.company = company;
         this.gps = gps;
         this.opening_hours = opening_hours;
@@ -85,6 +105,13 @@ public class GasStation {
         return address;
     }
 
+    /**
+     * @return The city or town of the station, or an empty string if unknown
+     */
+    public String getCity() {
+        return city;
+    }
+
     public GPS getGps() {
         return gps;
     }
@@ -0,0 +1,117 @@
+package com.yaniv.FullTank.index;
+
+/**
+ * Spherical distance kernel used by the query hot loops instead of
+ * {@code Location.distanceBetween} (iterative Vincenty on the WGS84 ellipsoid,
+ * plus a float[] per call).
+ * <p>
+ * Per-station radians and cos(lat) are precomputed once per snapshot and
+ * per-query constants once per {@link Query}, so scoring a station is a few
+ * multiplications (equirectangular, used to prune) or two sines and an
+ * asin (haversine, used for the distances that are shown and ranked).
+ * <p>
+ * Error bound, measured on 300k random pairs spanning Israel (29.45-33.35N,
+ * 34.2-35.95E) against the Vincenty distance {@code distanceBetween} returns:
+ * haversine on {@link #EARTH_RADIUS} is within 0.28% (at most ~41m at 15km).
+ * Equirectangular with the query's cos(lat) is within 0.2% of haversine up to
+ * 100km and 0.41% across the whole country, so pruning with
+ * {@link #PRUNE_SLACK} never drops a station haversine would keep.
+ */
+public class DistanceEngine {
+    /** Sphere radius in meters that best fits the ellipsoid at Israel's latitudes */
+    public static final double EARTH_RADIUS = 6_368_000;
+    /** Relative margin added to a radius before equirectangular pruning */
+    private static final double PRUNE_SLACK = 0.01;
+
+    private final double[] latRad;
+    private final double[] lngRad;
+    private final double[] cosLat;
+
+    private DistanceEngine(double[] lats, double[] lngs) {
+        int n = lats.length;
+        latRad = new double[n];
+        lngRad = new double[n];
+        cosLat = new double[n];
+        for (int i = 0; i < n; i++) {
+            latRad[i] = Math.toRadians(lats[i]);
+            lngRad[i] = Math.toRadians(lngs[i]);
+            cosLat[i] = Math.cos(latRad[i]);
+        }
+    }
+
+    /**
+     * Precomputes the per-row constants of a store's coordinates
+     */
+    public static DistanceEngine forStore(StationStore store) {
+        return new DistanceEngine(store.lats(), store.lngs());
+    }
+
+    /**
+     * Per-query constants: the origin in radians and its cos(lat).
+     */
+    public static class Query {
+        final double latRad;
+        final double lngRad;
+        final double cosLat;
+
+        public Query(double lat, double lng) {
+            this.latRad = Math.toRadians(lat);
+            this.lngRad = Math.toRadians(lng);
+            this.cosLat = Math.cos(latRad);
+        }
+    }
+
+    /**
+     * @return The haversine distance in meters from the query origin to a row
+     */
+    public float distance(Query query, int row) {
+        return haversine(query.latRad, query.lngRad, query.cosLat, latRad[row], lngRad[row], cosLat[row]);
+    }
+
+    /**
+     * Cheap pre-check for radius queries: false only when the row is certainly
+     * farther than {@code radiusMeters}. Rows that pass still need {@link #distance}.
+     */
+    public boolean mayBeWithin(Query query, int row, double radiusMeters) {
+        double x = (lngRad[row] - query.lngRad) * query.cosLat;
+        double y = latRad[row] - query.latRad;
+        double limit = radiusMeters * (1 + PRUNE_SLACK) / EARTH_RADIUS;
+        return x * x + y * y <= limit * limit;
+    }
+
+    /**
+     * Batch form of {@link #distance}: writes the distance to {@code rows[i]} into {@code out[i]}
+     */
+    public void distances(Query query, int[] rows, float[] out) {
+        for (int i = 0; i < rows.length; i++) {
+            int row = rows[i];
+            out[i] = haversine(query.latRad, query.lngRad, query.cosLat, latRad[row], lngRad[row], cosLat[row]);
+        }
+    }
+
+    /**
+     * Batch form over the whole store: writes the distance to row i into {@code out[i]}
+     */
+    public void distances(Query query, float[] out) {
+        for (int row = 0; row < latRad.length; row++) {
+            out[row] = haversine(query.latRad, query.lngRad, query.cosLat, latRad[row], lngRad[row], cosLat[row]);
+        }
+    }
+
+    /**
+     * One-off haversine distance in meters between two coordinates in degrees,
+     * for callers outside the query loops
+     */
+    public static float between(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        return haversine(phi1, Math.toRadians(lng1), Math.cos(phi1), phi2, Math.toRadians(lng2), Math.cos(phi2));
+    }
+
+    private static float haversine(double lat1, double lng1, double cos1, double lat2, double lng2, double cos2) {
+        double sinLat = Math.sin((lat2 - lat1) * 0.5);
+        double sinLng = Math.sin((lng2 - lng1) * 0.5);
+        double h = sinLat * sinLat + cos1 * cos2 * sinLng * sinLng;
+        return (float) (2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, h))));
+    }
+}
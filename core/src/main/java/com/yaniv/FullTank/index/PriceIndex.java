@@ -0,0 +1,139 @@
+package com.yaniv.FullTank.index;
+
+import com.yaniv.FullTank.dm.FuelType;
+
+import java.util.Arrays;
+
+/**
+ * Stations presorted by price for every fuel type, built once per data load.
+ * Price-ordered results are produced by ranking candidates against the
+ * presorted order instead of re-sorting station objects with a comparator on
+ * every query. Order is (price, row), which is what a stable sort of a
+ * row-ordered list by price gives.
+ */
+public class PriceIndex {
+    /** Station indices in price order, per fuel type */
+    private final int[][] order;
+    /** Position of each station in {@link #order}, per fuel type */
+    private final int[][] rank;
+
+    private PriceIndex(int[][] order, int[][] rank) {
+        this.order = order;
+        this.rank = rank;
+    }
+
+    /**
+     * Builds the price order of the store rows for every fuel type.
+     */
+    public static PriceIndex build(StationStore store) {
+        int n = store.size();
+        FuelType[] types = FuelType.values();
+        int[][] order = new int[types.length][];
+        int[][] rank = new int[types.length][];
+
+        long[] sorted = new long[n];
+        for (FuelType type : types) {
+            float[] prices = store.prices(type);
+            for (int row = 0; row < n; row++) {
+                // Sortable float bits in the high half, row in the low half, so ties keep row order
+                int bits = Float.floatToIntBits(prices[row]);
+                bits ^= (bits >> 31) & 0x7FFFFFFF;
+                sorted[row] = ((long) bits << 32) | row;
+            }
+            Arrays.sort(sorted);
+
+            int[] typeOrder = new int[n];
+            int[] typeRank = new int[n];
+            for (int position = 0; position < n; position++) {
+                int row = (int) sorted[position];
+                typeOrder[position] = row;
+                typeRank[row] = position;
+            }
+            order[type.ordinal()] = typeOrder;
+            rank[type.ordinal()] = typeRank;
+        }
+        return new PriceIndex(order, rank);
+    }
+
+    /**
+     * Reorders station indices in place by price, cheapest first.
+     * Small sets are sorted by their precomputed ranks; large sets are produced
+     * by filtering the presorted order, which is linear in the station count.
+     */
+    public void sortByPrice(int[] indices, FuelType fuelType) {
+        int size = indices.length;
+        if (size < 2) return;
+        int[] typeOrder = order[fuelType.ordinal()];
+        int[] typeRank = rank[fuelType.ordinal()];
+
+        int log = 32 - Integer.numberOfLeadingZeros(size);
+        if ((long) size * log < typeOrder.length) {
+            int[] ranks = new int[size];
+            for (int i = 0; i < size; i++) {
+                ranks[i] = typeRank[indices[i]];
+            }
+            Arrays.sort(ranks);
+            for (int i = 0; i < size; i++) {
+                indices[i] = typeOrder[ranks[i]];
+            }
+        } else {
+            boolean[] selected = new boolean[typeOrder.length];
+            for (int index : indices) {
+                selected[index] = true;
+            }
+            int count = 0;
+            for (int index : typeOrder) {
+                if (selected[index]) {
+                    indices[count++] = index;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the {@code k} cheapest of the given station indices, cheapest first,
+     * without sorting the whole set. Keeps a bounded max-heap of ranks.
+     */
+    public int[] cheapest(int[] indices, FuelType fuelType, int k) {
+        int[] typeOrder = order[fuelType.ordinal()];
+        int[] typeRank = rank[fuelType.ordinal()];
+        int limit = Math.min(k, indices.length);
+        if (limit <= 0) return new int[0];
+
+        int[] heap = new int[limit];
+        int size = 0;
+        for (int index : indices) {
+            int r = typeRank[index];
+            if (size < limit) {
+                // Sift up
+                int child = size++;
+                while (child > 0) {
+                    int parent = (child - 1) >>> 1;
+                    if (heap[parent] >= r) break;
+                    heap[child] = heap[parent];
+                    child = parent;
+                }
+                heap[child] = r;
+            } else if (r < heap[0]) {
+                // Replace the most expensive kept entry and sift down
+                int parent = 0;
+                while (true) {
+                    int child = 2 * parent + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+                    if (heap[child] <= r) break;
+                    heap[parent] = heap[child];
+                    parent = child;
+                }
+                heap[parent] = r;
+            }
+        }
+
+        Arrays.sort(heap, 0, size);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = typeOrder[heap[i]];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,275 @@
+package com.yaniv.FullTank.index;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Trigram inverted index over the searchable text of each station
+ * (address, company and city), built once per data load.
+ * A substring query is answered by intersecting the posting lists of the
+ * query's trigrams and confirming the few remaining candidates, instead of
+ * lowercasing and scanning every address on each keystroke.
+ */
+public class SearchIndex {
+    /** Separates fields in the stored text; normalized queries never contain it */
+    private static final char FIELD_SEPARATOR = '\n';
+    /** Characters get a compact 10 bit code so a trigram packs into one int */
+    private static final int MAX_CHAR_CODE = (1 << 10) - 1;
+
+    /** Normalized searchable text of each station */
+    private final String[] texts;
+    /** Compact code per UTF-16 char, 0 for chars that never appear in the data */
+    private final short[] charCodes;
+    /** Distinct trigram keys in ascending order */
+    private final int[] grams;
+    /** Ascending station indices containing each trigram */
+    private final int[][] postings;
+
+    private SearchIndex(String[] texts, short[] charCodes, int[] grams, int[][] postings) {
+        this.texts = texts;
+        this.charCodes = charCodes;
+        this.grams = grams;
+        this.postings = postings;
+    }
+
+    /**
+     * Normalizes text for matching: lowercase, Hebrew vowel points removed,
+     * geresh/gershayim folded to ASCII quotes and whitespace collapsed.
+     */
+    public static String normalize(String text) {
+        if (text == null) return "";
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder result = new StringBuilder(lower.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = result.length() > 0;
+                continue;
+            }
+            if (c >= '\u0591' && c <= '\u05C7' && c != '\u05BE' && c != '\u05C0' && c != '\u05C3' && c != '\u05C6') {
+                continue; // niqqud and cantillation marks, keeping maqaf and punctuation
+            }
+            if (c == '\u05F3') c = '\'';
+            else if (c == '\u05F4') c = '"';
+            if (pendingSpace) {
+                result.append(' ');
+                pendingSpace = false;
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Builds an index over the stations' address, company and city.
+     * Indices returned by {@link #search(String)} are store rows.
+     */
+    public static SearchIndex build(StationStore store) {
+        int n = store.size();
+        String[] texts = new String[n];
+        short[] charCodes = new short[Character.MAX_VALUE + 1];
+        int nextCode = 1;
+        GramTable table = new GramTable();
+
+        // Company names are dictionary encoded, so each is normalized once
+        String[] companies = new String[store.companyCount()];
+        for (int id = 0; id < companies.length; id++) {
+            companies[id] = normalize(store.companyName(id));
+        }
+
+        for (int i = 0; i < n; i++) {
+            String text = normalize(store.address(i))
+                    + FIELD_SEPARATOR + companies[store.companyId(i)]
+                    + FIELD_SEPARATOR + normalize(store.city(i));
+            texts[i] = text;
+
+            // Trigrams never span a field separator
+            int c1 = 0, c2 = 0, run = 0;
+            for (int j = 0; j < text.length(); j++) {
+                char c = text.charAt(j);
+                if (c == FIELD_SEPARATOR) {
+                    run = 0;
+                    continue;
+                }
+                if (charCodes[c] == 0) {
+                    // Rare characters beyond the code space share the last code; verification sorts them out
+                    charCodes[c] = (short) Math.min(nextCode++, MAX_CHAR_CODE);
+                }
+                int code = charCodes[c];
+                if (++run >= 3) {
+                    table.add(gram(c1, c2, code), i);
+                }
+                c1 = c2;
+                c2 = code;
+            }
+        }
+        return table.toIndex(texts, charCodes);
+    }
+
+    private static int gram(int c1, int c2, int c3) {
+        return (c1 << 20) | (c2 << 10) | c3;
+    }
+
+    /**
+     * Returns the indices, in ascending order, of stations whose address,
+     * company or city contains the normalized query.
+     * An empty query matches every station.
+     */
+    public int[] search(String query) {
+        String q = normalize(query);
+        if (q.isEmpty()) {
+            int[] all = new int[texts.length];
+            for (int i = 0; i < all.length; i++) all[i] = i;
+            return all;
+        }
+        if (q.length() < 3) {
+            return scan(q, null, texts.length);
+        }
+
+        // Collect the posting list of every trigram in the query
+        int gramCount = q.length() - 2;
+        int[][] lists = new int[gramCount][];
+        for (int j = 0; j < gramCount; j++) {
+            int c1 = charCodes[q.charAt(j)], c2 = charCodes[q.charAt(j + 1)], c3 = charCodes[q.charAt(j + 2)];
+            if (c1 == 0 || c2 == 0 || c3 == 0) return new int[0];
+            int slot = Arrays.binarySearch(grams, gram(c1, c2, c3));
+            if (slot < 0) return new int[0];
+            lists[j] = postings[slot];
+        }
+
+        // Intersect starting from the shortest list, then confirm the substring
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] candidates = lists[0];
+        int size = candidates.length;
+        for (int j = 1; j < gramCount && size > 0; j++) {
+            if (lists[j] == lists[j - 1]) continue; // repeated trigram
+            int[] next = new int[size];
+            size = intersect(candidates, size, lists[j], next);
+            candidates = next;
+        }
+        return scan(q, candidates, size);
+    }
+
+    /**
+     * Narrows earlier results to the stations that also contain the query.
+     * Used when the query extends one whose result is already known, since every
+     * match of the longer query must be among the matches of the shorter one.
+     *
+     * @param query Query; normalized here
+     * @param candidates Ascending indices matched by a query contained in this one
+     * @return The candidates that match, in ascending order
+     */
+    public int[] refine(String query, int[] candidates) {
+        return scan(normalize(query), candidates, candidates.length);
+    }
+
+    /**
+     * @return Number of indexed stations
+     */
+    public int size() {
+        return texts.length;
+    }
+
+    /** Keeps the candidates (or all stations when null) whose text contains q */
+    private int[] scan(String q, int[] candidates, int size) {
+        int[] result = new int[size];
+        int count = 0;
+        for (int j = 0; j < size; j++) {
+            int index = candidates == null ? j : candidates[j];
+            if (texts[index].contains(q)) {
+                result[count++] = index;
+            }
+        }
+        return count == size ? result : Arrays.copyOf(result, count);
+    }
+
+    private static int intersect(int[] a, int aSize, int[] b, int[] out) {
+        int i = 0, j = 0, count = 0;
+        while (i < aSize && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /** Open-addressing trigram to posting list table used while building */
+    private static class GramTable {
+        private int[] keys = new int[1 << 12];
+        private int[][] lists = new int[1 << 12][];
+        private int[] sizes = new int[1 << 12];
+        private int count;
+
+        void add(int gram, int index) {
+            int mask = keys.length - 1;
+            int slot = (gram * 0x9E3779B1) >>> 8 & mask;
+            while (lists[slot] != null && keys[slot] != gram) {
+                slot = (slot + 1) & mask;
+            }
+            if (lists[slot] == null) {
+                keys[slot] = gram;
+                lists[slot] = new int[4];
+                if (++count * 2 > keys.length) {
+                    grow();
+                    add(gram, index);
+                    return;
+                }
+            }
+            int size = sizes[slot];
+            // Stations are added in order, so a repeat within one station is always the last entry
+            if (size > 0 && lists[slot][size - 1] == index) return;
+            if (size == lists[slot].length) {
+                lists[slot] = Arrays.copyOf(lists[slot], size * 2);
+            }
+            lists[slot][size] = index;
+            sizes[slot] = size + 1;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[][] oldLists = lists;
+            int[] oldSizes = sizes;
+            keys = new int[oldKeys.length * 2];
+            lists = new int[oldKeys.length * 2][];
+            sizes = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldLists[i] == null) continue;
+                int slot = (oldKeys[i] * 0x9E3779B1) >>> 8 & mask;
+                while (lists[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                lists[slot] = oldLists[i];
+                sizes[slot] = oldSizes[i];
+            }
+        }
+
+        SearchIndex toIndex(String[] texts, short[] charCodes) {
+            // Sort grams by key, carrying their slot along in the low bits
+            long[] order = new long[count];
+            int n = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (lists[slot] != null) {
+                    order[n++] = ((long) keys[slot] << 32) | slot;
+                }
+            }
+            Arrays.sort(order);
+            int[] grams = new int[count];
+            int[][] postings = new int[count][];
+            for (int i = 0; i < count; i++) {
+                int slot = (int) order[i];
+                grams[i] = (int) (order[i] >>> 32);
+                postings[i] = Arrays.copyOf(lists[slot], sizes[slot]);
+            }
+            return new SearchIndex(texts, charCodes, grams, postings);
+        }
+    }
+}
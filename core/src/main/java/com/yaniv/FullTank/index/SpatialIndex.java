@@ -0,0 +1,311 @@
+package com.yaniv.FullTank.index;
+
+import java.util.Arrays;
+
+/**
+ * Sparse lat/lng grid over the station coordinates, built once per data load.
+ * Stations are bucketed into fixed-size cells and stored sorted by cell key, so a
+ * query only visits the cells that can contain a match instead of measuring the
+ * distance to every station.
+ * Results are exact: the grid only prunes, every candidate is still measured with
+ * the snapshot's {@link DistanceEngine}.
+ */
+public class SpatialIndex {
+    /** Cell edge in degrees (~1.1km north-south) */
+    private static final double CELL_DEG = 0.01;
+    /**
+     * Lower bound for meters per degree of latitude (and of longitude at the equator).
+     * Both the ellipsoid and the sphere are above 110.5km, so converting with this
+     * value never makes a search box too small.
+     */
+    private static final double METERS_PER_DEG = 110_000;
+    /** Keeps cell rows/columns positive (and under 17 bits) so keys sort by row, then column */
+    private static final int KEY_OFFSET = 1 << 15;
+
+    /**
+     * Matching station indices with their distances, in query-specific order.
+     */
+    public static class Hits {
+        public final int[] indices;
+        public final float[] distances;
+
+        Hits(int[] indices, float[] distances) {
+            this.indices = indices;
+            this.distances = distances;
+        }
+
+        public int size() {
+            return indices.length;
+        }
+    }
+
+    private final DistanceEngine distanceEngine;
+    /** Coordinate columns of the store, shared rather than copied */
+    private final double[] lats;
+    private final double[] lngs;
+    /** Station indices ordered by cell key, then by index */
+    private final int[] order;
+    /** Distinct cell keys in ascending order */
+    private final long[] cellKeys;
+    /** Start offset of each cell in {@link #order}, with a trailing end marker */
+    private final int[] cellStart;
+    /** Lower bound for the width of one cell in meters anywhere in the data set */
+    private final double minCellMeters;
+    private final int minRow, maxRow, minCol, maxCol;
+
+    private SpatialIndex(double[] lats, double[] lngs, DistanceEngine distanceEngine) {
+        this.distanceEngine = distanceEngine;
+        this.lats = lats;
+        this.lngs = lngs;
+
+        int n = lats.length;
+        // Sort (key, index) pairs packed into one long per station
+        long[] packed = new long[n];
+        double maxAbsLat = 0;
+        int rMin = Integer.MAX_VALUE, rMax = Integer.MIN_VALUE, cMin = Integer.MAX_VALUE, cMax = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int row = row(lats[i]);
+            int col = col(lngs[i]);
+            rMin = Math.min(rMin, row);
+            rMax = Math.max(rMax, row);
+            cMin = Math.min(cMin, col);
+            cMax = Math.max(cMax, col);
+            maxAbsLat = Math.max(maxAbsLat, Math.abs(lats[i]));
+            packed[i] = (key(row, col) << 24) | i;
+        }
+        Arrays.sort(packed);
+
+        order = new int[n];
+        long[] keys = new long[n];
+        int[] starts = new int[n + 1];
+        int cells = 0;
+        long previous = -1;
+        for (int i = 0; i < n; i++) {
+            long cellKey = packed[i] >>> 24;
+            order[i] = (int) (packed[i] & 0xFFFFFF);
+            if (cellKey != previous) {
+                keys[cells] = cellKey;
+                starts[cells] = i;
+                cells++;
+                previous = cellKey;
+            }
+        }
+        starts[cells] = n;
+        cellKeys = Arrays.copyOf(keys, cells);
+        cellStart = Arrays.copyOf(starts, cells + 1);
+
+        minRow = rMin;
+        maxRow = rMax;
+        minCol = cMin;
+        maxCol = cMax;
+        double cosLat = Math.cos(Math.toRadians(Math.min(89.0, maxAbsLat + CELL_DEG)));
+        minCellMeters = CELL_DEG * METERS_PER_DEG * cosLat;
+    }
+
+    /**
+     * Builds an index over the store's coordinate columns.
+     * Indices returned by queries are store rows.
+     */
+    public static SpatialIndex build(StationStore store, DistanceEngine distanceEngine) {
+        return new SpatialIndex(store.lats(), store.lngs(), distanceEngine);
+    }
+
+    private static int row(double lat) {
+        return (int) Math.floor(Math.max(-90, Math.min(90, lat)) / CELL_DEG) + KEY_OFFSET;
+    }
+
+    private static int col(double lng) {
+        return (int) Math.floor(Math.max(-180, Math.min(180, lng)) / CELL_DEG) + KEY_OFFSET;
+    }
+
+    /** Row and column both fit in 17 bits, leaving 24 bits of station index in the packed sort key */
+    private static long key(int row, int col) {
+        return ((long) row << 17) | col;
+    }
+
+    /**
+     * Returns every station within {@code radiusMeters}, ordered by station index
+     * (the same order a linear scan over the rows produces).
+     */
+    public Hits withinRadius(double lat, double lng, float radiusMeters) {
+        double dLat = radiusMeters / METERS_PER_DEG;
+        double cosLat = Math.cos(Math.toRadians(Math.min(89.0, Math.abs(lat) + dLat)));
+        double dLng = radiusMeters / (METERS_PER_DEG * cosLat);
+
+        int rowFrom = Math.max(row(lat - dLat), minRow);
+        int rowTo = Math.min(row(lat + dLat), maxRow);
+        int colFrom = Math.max(col(lng - dLng), minCol);
+        int colTo = Math.min(col(lng + dLng), maxCol);
+
+        // Pack (index, distance) so sorting restores index order
+        DistanceEngine.Query query = new DistanceEngine.Query(lat, lng);
+        LongList found = new LongList();
+        for (int row = rowFrom; row <= rowTo; row++) {
+            int from = firstCellAtOrAfter(key(row, colFrom));
+            long last = key(row, colTo);
+            for (int cell = from; cell < cellKeys.length && cellKeys[cell] <= last; cell++) {
+                for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+                    int index = order[p];
+                    if (!distanceEngine.mayBeWithin(query, index, radiusMeters)) continue;
+                    float distance = distanceEngine.distance(query, index);
+                    if (distance <= radiusMeters) {
+                        found.add(((long) index << 32) | (Float.floatToRawIntBits(distance) & 0xFFFFFFFFL));
+                    }
+                }
+            }
+        }
+        long[] sorted = found.toSortedArray();
+        int[] indices = new int[sorted.length];
+        float[] distances = new float[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            indices[i] = (int) (sorted[i] >>> 32);
+            distances[i] = Float.intBitsToFloat((int) sorted[i]);
+        }
+        return new Hits(indices, distances);
+    }
+
+    /**
+     * Returns every station inside a lat/lng box, ordered by station index.
+     * Used to cull markers to the visible map area.
+     */
+    public int[] withinBox(double south, double west, double north, double east) {
+        int rowFrom = Math.max(row(south), minRow);
+        int rowTo = Math.min(row(north), maxRow);
+        int colFrom = Math.max(col(west), minCol);
+        int colTo = Math.min(col(east), maxCol);
+
+        int[] found = new int[32];
+        int size = 0;
+        for (int row = rowFrom; row <= rowTo; row++) {
+            long last = key(row, colTo);
+            for (int cell = firstCellAtOrAfter(key(row, colFrom)); cell < cellKeys.length && cellKeys[cell] <= last; cell++) {
+                for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+                    int index = order[p];
+                    double lat = lats[index];
+                    double lng = lngs[index];
+                    if (lat < south || lat > north || lng < west || lng > east) continue;
+                    if (size == found.length) {
+                        found = Arrays.copyOf(found, size * 2);
+                    }
+                    found[size++] = index;
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(found, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns up to {@code k} stations within {@code maxRadiusMeters}, nearest first.
+     * Ties are broken by row, matching a stable sort of a row-ordered scan.
+     * The search grows one ring of cells at a time and stops as soon as the
+     * k-th candidate is provably closer than anything outside the visited block.
+     */
+    public Hits nearest(double lat, double lng, int k, float maxRadiusMeters) {
+        // Pack (distance, index) so sorting orders by distance, then index.
+        // Distances are non-negative, so their raw bits sort like the floats themselves.
+        LongList found = new LongList();
+        if (k <= 0 || cellKeys.length == 0) {
+            return toHits(found.toSortedArray(), 0);
+        }
+        DistanceEngine.Query query = new DistanceEngine.Query(lat, lng);
+        int row0 = row(lat);
+        int col0 = col(lng);
+        int maxRing = Math.max(Math.max(row0 - minRow, maxRow - row0), Math.max(col0 - minCol, maxCol - col0));
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (ring == 0) {
+                scanRow(row0, col0, col0, query, maxRadiusMeters, found);
+            } else {
+                scanRow(row0 - ring, col0 - ring, col0 + ring, query, maxRadiusMeters, found);
+                scanRow(row0 + ring, col0 - ring, col0 + ring, query, maxRadiusMeters, found);
+                for (int row = row0 - ring + 1; row <= row0 + ring - 1; row++) {
+                    scanRow(row, col0 - ring, col0 - ring, query, maxRadiusMeters, found);
+                    scanRow(row, col0 + ring, col0 + ring, query, maxRadiusMeters, found);
+                }
+            }
+
+            // Anything not yet visited is at least this far away
+            double bound = ring * minCellMeters;
+            if (bound > maxRadiusMeters || found.countAtMost(bound) >= k) {
+                break;
+            }
+        }
+        return toHits(found.toSortedArray(), k);
+    }
+
+    private void scanRow(int row, int colFrom, int colTo, DistanceEngine.Query query, float maxRadiusMeters, LongList found) {
+        if (row < minRow || row > maxRow) return;
+        colFrom = Math.max(colFrom, minCol);
+        colTo = Math.min(colTo, maxCol);
+        if (colFrom > colTo) return;
+
+        long last = key(row, colTo);
+        for (int cell = firstCellAtOrAfter(key(row, colFrom)); cell < cellKeys.length && cellKeys[cell] <= last; cell++) {
+            for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+                int index = order[p];
+                if (!distanceEngine.mayBeWithin(query, index, maxRadiusMeters)) continue;
+                float distance = distanceEngine.distance(query, index);
+                if (distance <= maxRadiusMeters) {
+                    found.add(((long) Float.floatToRawIntBits(distance) << 32) | index);
+                }
+            }
+        }
+    }
+
+    private static Hits toHits(long[] sorted, int limit) {
+        int size = Math.min(limit, sorted.length);
+        int[] indices = new int[size];
+        float[] distances = new float[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = (int) sorted[i];
+            distances[i] = Float.intBitsToFloat((int) (sorted[i] >>> 32));
+        }
+        return new Hits(indices, distances);
+    }
+
+    /** Binary search for the first cell whose key is {@code >= key} */
+    private int firstCellAtOrAfter(long key) {
+        int low = 0, high = cellKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cellKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Minimal growable long array, avoids boxing candidates */
+    private static class LongList {
+        private long[] values = new long[32];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /** Counts (distance, index) entries whose distance is at most {@code bound} */
+        int countAtMost(double bound) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (Float.intBitsToFloat((int) (values[i] >>> 32)) <= bound) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        long[] toSortedArray() {
+            long[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
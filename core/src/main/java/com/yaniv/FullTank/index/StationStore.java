@@ -0,0 +1,211 @@
+package com.yaniv.FullTank.index;
+
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.FuelType;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Column-oriented, read-only copy of a station snapshot.
+ * Each field lives in its own primitive array indexed by row, so query loops
+ * read coordinates and prices without chasing GasStation -> GPS/FuelPrices
+ * references or allocating. Company names are dictionary encoded.
+ * {@link GasStation} objects are only created for rows that are actually
+ * requested through {@link #station(int)}, and then reused.
+ */
+public class StationStore {
+    private final int size;
+    private final int[] ids;
+    private final double[] lats;
+    private final double[] lngs;
+    /** Prices per fuel type, indexed by {@link FuelType#ordinal()} then row */
+    private final float[][] prices;
+    private final int[] companyIds;
+    private final String[] companyNames;
+    private final String[] addresses;
+    private final String[] cities;
+    private final String[] openingHours;
+    private final boolean[] fromApi;
+    /** Rows materialized so far, null until first requested; safely published across threads */
+    private final AtomicReferenceArray<GasStation> materialized;
+
+    private StationStore(List<GasStation> stations) {
+        size = stations.size();
+        ids = new int[size];
+        lats = new double[size];
+        lngs = new double[size];
+        prices = new float[FuelType.values().length][size];
+        companyIds = new int[size];
+        addresses = new String[size];
+        cities = new String[size];
+        openingHours = new String[size];
+        fromApi = new boolean[size];
+        materialized = new AtomicReferenceArray<>(size);
+
+        Map<String, Integer> companyDictionary = new HashMap<>();
+        for (int row = 0; row < size; row++) {
+            GasStation station = stations.get(row);
+            ids[row] = station.getId();
+            lats[row] = station.getGps().getLat();
+            lngs[row] = station.getGps().getLng();
+            for (FuelType type : FuelType.values()) {
+                prices[type.ordinal()][row] = (float) type.priceOf(station.getFuel_prices());
+            }
+            String company = station.getCompany() == null ? "" : station.getCompany();
+            Integer companyId = companyDictionary.get(company);
+            if (companyId == null) {
+                companyId = companyDictionary.size();
+                companyDictionary.put(company, companyId);
+            }
+            companyIds[row] = companyId;
+            addresses[row] = station.getAddress() == null ? "" : station.getAddress();
+            cities[row] = station.getCity() == null ? "" : station.getCity();
+            openingHours[row] = station.getOpening_hours();
+            fromApi[row] = station.isFromApi();
+        }
+
+        companyNames = new String[companyDictionary.size()];
+        for (Map.Entry<String, Integer> entry : companyDictionary.entrySet()) {
+            companyNames[entry.getValue()] = entry.getKey();
+        }
+    }
+
+    /**
+     * Copies the stations into columns. The list is not retained.
+     */
+    public static StationStore from(List<GasStation> stations) {
+        return new StationStore(stations);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int id(int row) {
+        return ids[row];
+    }
+
+    public double lat(int row) {
+        return lats[row];
+    }
+
+    public double lng(int row) {
+        return lngs[row];
+    }
+
+    /**
+     * @return The price of the fuel type at the row in ₪, 0 if not sold or unknown
+     */
+    public float price(FuelType fuelType, int row) {
+        return prices[fuelType.ordinal()][row];
+    }
+
+    public int companyId(int row) {
+        return companyIds[row];
+    }
+
+    public int companyCount() {
+        return companyNames.length;
+    }
+
+    public String companyName(int companyId) {
+        return companyNames[companyId];
+    }
+
+    public String company(int row) {
+        return companyNames[companyIds[row]];
+    }
+
+    public String address(int row) {
+        return addresses[row];
+    }
+
+    public String city(int row) {
+        return cities[row];
+    }
+
+    public boolean isFromApi(int row) {
+        return fromApi[row];
+    }
+
+    /** Latitude column, for index builders in this package; must not be modified */
+    double[] lats() {
+        return lats;
+    }
+
+    /** Longitude column, for index builders in this package; must not be modified */
+    double[] lngs() {
+        return lngs;
+    }
+
+    /** Price column of a fuel type, for index builders in this package; must not be modified */
+    float[] prices(FuelType fuelType) {
+        return prices[fuelType.ordinal()];
+    }
+
+    /**
+     * Returns the GasStation for a row, creating it on first use.
+     * The same instance is returned for the row afterwards.
+     */
+    public GasStation station(int row) {
+        GasStation station = materialized.get(row);
+        if (station != null) return station;
+        GasStation created = new GasStation(
+                ids[row],
+                addresses[row],
+                cities[row],
+                companyNames[companyIds[row]],
+                new GPS(lats[row], lngs[row]),
+                openingHours[row],
+                new FuelPrices(
+                        toPrice(prices[FuelType.PETROL_98.ordinal()][row]),
+                        toPrice(prices[FuelType.PETROL_95.ordinal()][row]),
+                        toPrice(prices[FuelType.DIESEL.ordinal()][row])),
+                fromApi[row]);
+        // Threads racing on the same row all end up with the first published instance
+        return materialized.compareAndSet(row, null, created) ? created : materialized.get(row);
+    }
+
+    /**
+     * Widens a stored float back to the price it was read as.
+     * Going through the shortest decimal form keeps 7.44 as 7.44 rather than 7.440000057.
+     */
+    private static double toPrice(float price) {
+        return price == 0 ? 0 : Double.parseDouble(Float.toString(price));
+    }
+
+    /**
+     * @return A read-only list view that materializes rows as they are accessed
+     */
+    public List<GasStation> asList() {
+        return new AbstractList<GasStation>() {
+            @Override
+            public GasStation get(int index) {
+                return station(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Materializes only the given rows, in the given order
+     */
+    public List<GasStation> stations(int[] rows) {
+        List<GasStation> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            result.add(station(row));
+        }
+        return result;
+    }
+}
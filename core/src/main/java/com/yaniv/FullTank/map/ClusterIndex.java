@@ -0,0 +1,361 @@
+package com.yaniv.FullTank.map;
+
+import com.yaniv.FullTank.dm.FuelType;
+import com.yaniv.FullTank.index.StationStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Grid clusters of a set of stations for every zoom level up to {@link #MAX_CLUSTER_ZOOM}.
+ * Stations are bucketed into square cells of Web Mercator space, {@link #CELL_TILE_FRACTION}
+ * of a map tile wide at each zoom level. A cell at one level is exactly four cells of the
+ * next, so every level is built by merging the one above it, and a cluster always splits
+ * into clusters that lie inside it when zooming in.
+ * Built once per station set, off the main thread; querying a level is read-only and
+ * can be repeated for every pan.
+ */
+public class ClusterIndex {
+    /** Deepest zoom level that is clustered; above it every station is drawn on its own */
+    public static final int MAX_CLUSTER_ZOOM = 13;
+    /** Cells per tile edge is 2^CELL_SHIFT, i.e. a cell is a quarter tile (64px at 256px tiles) */
+    private static final int CELL_SHIFT = 2;
+    /** Share of a tile edge covered by one cell */
+    public static final double CELL_TILE_FRACTION = 1.0 / (1 << CELL_SHIFT);
+    /** Latitude steps per degree in the sort key; 180 degrees of them fit in 31 bits */
+    private static final double LAT_KEY_SCALE = 1e7;
+
+    /**
+     * Stations sharing one cell at one zoom level.
+     */
+    public static class Cluster {
+        private final long key;
+        private final int count;
+        private final double lat;
+        private final double lng;
+        private final float[] cheapest;
+        private final int row;
+
+        Cluster(long key, int count, double lat, double lng, float[] cheapest, int row) {
+            this.key = key;
+            this.count = count;
+            this.lat = lat;
+            this.lng = lng;
+            this.cheapest = cheapest;
+            this.row = row;
+        }
+
+        /** Unique across zoom levels */
+        public long getKey() {
+            return key;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /** Mean latitude of the member stations */
+        public double getLat() {
+            return lat;
+        }
+
+        /** Mean longitude of the member stations */
+        public double getLng() {
+            return lng;
+        }
+
+        /**
+         * @return Lowest non-zero price among the members, 0 if none lists this fuel type
+         */
+        public float getCheapest(FuelType fuelType) {
+            return cheapest[fuelType.ordinal()];
+        }
+
+        /**
+         * @return The store row of the only member, or -1 if there are several
+         */
+        public int getRow() {
+            return row;
+        }
+    }
+
+    /** Clusters of one zoom level, in columns ordered by latitude */
+    private static class Level {
+        final long[] keys;
+        final int[] counts;
+        final double[] lats;
+        final double[] lngs;
+        /** Cheapest price per fuel type ordinal, then cluster */
+        final float[][] cheapest;
+        final int[] rows;
+        /** Cluster positions ordered by key, for lookups by cell */
+        final int[] byKey;
+
+        Level(int size) {
+            keys = new long[size];
+            counts = new int[size];
+            lats = new double[size];
+            lngs = new double[size];
+            cheapest = new float[FuelType.values().length][size];
+            rows = new int[size];
+            byKey = new int[size];
+        }
+
+        int size() {
+            return keys.length;
+        }
+    }
+
+    private final Level[] levels = new Level[MAX_CLUSTER_ZOOM + 1];
+
+    private ClusterIndex() {
+    }
+
+    /**
+     * Clusters a subset of the store.
+     *
+     * @param rows Rows to cluster, or null for every row
+     */
+    public static ClusterIndex build(StationStore store, int[] rows) {
+        int n = rows == null ? store.size() : rows.length;
+        FuelType[] fuelTypes = FuelType.values();
+        ClusterIndex index = new ClusterIndex();
+
+        // Deepest level: group stations by cell, packing (cell, row) so one sort groups them
+        int topShift = MAX_CLUSTER_ZOOM + CELL_SHIFT;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            int row = rows == null ? i : rows[i];
+            packed[i] = (cell(store.lat(row), store.lng(row), topShift) << 24) | row;
+        }
+        Arrays.sort(packed);
+
+        int groups = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || packed[i] >>> 24 != packed[i - 1] >>> 24) groups++;
+        }
+        long[] cells = new long[groups];
+        int[] counts = new int[groups];
+        double[] latSums = new double[groups];
+        double[] lngSums = new double[groups];
+        float[][] cheapest = new float[fuelTypes.length][groups];
+        int[] singles = new int[groups];
+        int g = -1;
+        for (int i = 0; i < n; i++) {
+            long cell = packed[i] >>> 24;
+            int row = (int) (packed[i] & 0xFFFFFF);
+            if (i == 0 || cell != cells[g]) {
+                cells[++g] = cell;
+                singles[g] = row;
+            } else {
+                singles[g] = -1;
+            }
+            counts[g]++;
+            latSums[g] += store.lat(row);
+            lngSums[g] += store.lng(row);
+            for (FuelType type : fuelTypes) {
+                cheapest[type.ordinal()][g] = minPrice(cheapest[type.ordinal()][g], store.price(type, row));
+            }
+        }
+
+        // Each shallower level merges groups of four cells of the level below
+        for (int zoom = MAX_CLUSTER_ZOOM; zoom >= 0; zoom--) {
+            index.levels[zoom] = toLevel(zoom, cells, counts, latSums, lngSums, cheapest, singles);
+            if (zoom == 0) break;
+
+            int size = cells.length;
+            long[] parents = new long[size];
+            for (int i = 0; i < size; i++) {
+                parents[i] = (parentCell(cells[i]) << 24) | i;
+            }
+            Arrays.sort(parents);
+            int parentCount = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || parents[i] >>> 24 != parents[i - 1] >>> 24) parentCount++;
+            }
+            long[] parentCells = new long[parentCount];
+            int[] parentCounts = new int[parentCount];
+            double[] parentLatSums = new double[parentCount];
+            double[] parentLngSums = new double[parentCount];
+            float[][] parentCheapest = new float[fuelTypes.length][parentCount];
+            int[] parentSingles = new int[parentCount];
+            int p = -1;
+            for (int i = 0; i < size; i++) {
+                long cell = parents[i] >>> 24;
+                int child = (int) (parents[i] & 0xFFFFFF);
+                if (i == 0 || cell != parentCells[p]) {
+                    parentCells[++p] = cell;
+                    parentSingles[p] = singles[child];
+                } else {
+                    parentSingles[p] = -1;
+                }
+                parentCounts[p] += counts[child];
+                parentLatSums[p] += latSums[child];
+                parentLngSums[p] += lngSums[child];
+                for (int t = 0; t < fuelTypes.length; t++) {
+                    parentCheapest[t][p] = minPrice(parentCheapest[t][p], cheapest[t][child]);
+                }
+            }
+            cells = parentCells;
+            counts = parentCounts;
+            latSums = parentLatSums;
+            lngSums = parentLngSums;
+            cheapest = parentCheapest;
+            singles = parentSingles;
+        }
+        return index;
+    }
+
+    private static Level toLevel(int zoom, long[] cells, int[] counts, double[] latSums, double[] lngSums,
+                                 float[][] cheapest, int[] singles) {
+        int size = cells.length;
+        // Order clusters by latitude so a viewport only visits a band of them.
+        // Sorted as packed primitive keys, quantized latitude above the position
+        double[] meanLats = new double[size];
+        long[] byLatKey = new long[size];
+        for (int i = 0; i < size; i++) {
+            meanLats[i] = latSums[i] / counts[i];
+            byLatKey[i] = ((long) ((meanLats[i] + 90) * LAT_KEY_SCALE) << 24) | i;
+        }
+        Arrays.sort(byLatKey);
+        int[] byLat = new int[size];
+        for (int j = 0; j < size; j++) {
+            byLat[j] = (int) (byLatKey[j] & 0xFFFFFF);
+        }
+        // Clusters closer than the key's resolution may still be out of order; the
+        // order is nearly sorted, so this pass is linear
+        for (int j = 1; j < size; j++) {
+            int i = byLat[j];
+            int k = j;
+            while (k > 0 && meanLats[byLat[k - 1]] > meanLats[i]) {
+                byLat[k] = byLat[k - 1];
+                k--;
+            }
+            byLat[k] = i;
+        }
+
+        Level level = new Level(size);
+        long[] byKey = new long[size];
+        for (int j = 0; j < size; j++) {
+            int i = byLat[j];
+            level.keys[j] = key(zoom, cells[i]);
+            level.counts[j] = counts[i];
+            level.lats[j] = meanLats[i];
+            level.lngs[j] = lngSums[i] / counts[i];
+            for (int t = 0; t < cheapest.length; t++) {
+                level.cheapest[t][j] = cheapest[t][i];
+            }
+            level.rows[j] = singles[i];
+            // Cells are below 2^32 even at the deepest level, leaving the low bits for the position
+            byKey[j] = (cells[i] << 24) | j;
+        }
+        Arrays.sort(byKey);
+        for (int j = 0; j < size; j++) {
+            level.byKey[j] = (int) (byKey[j] & 0xFFFFFF);
+        }
+        return level;
+    }
+
+    /**
+     * Returns the clusters of a zoom level whose position lies inside a lat/lng box.
+     * Zoom levels above {@link #MAX_CLUSTER_ZOOM} are not clustered; use the spatial index.
+     */
+    public List<Cluster> clusters(int zoom, double south, double west, double north, double east) {
+        Level level = levels[Math.max(0, Math.min(zoom, MAX_CLUSTER_ZOOM))];
+        List<Cluster> result = new ArrayList<>();
+        int from = firstAtOrAbove(level.lats, south);
+        for (int i = from; i < level.size() && level.lats[i] <= north; i++) {
+            double lng = level.lngs[i];
+            if (lng < west || lng > east) continue;
+            result.add(cluster(level, i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cluster whose cell contains a point at a zoom level, or null if that cell is empty.
+     * A cluster's position, or a member station's, always falls in its own cell, so this finds the
+     * cluster a station or a deeper cluster belonged to at a shallower zoom.
+     */
+    public Cluster find(int zoom, double lat, double lng) {
+        zoom = Math.max(0, Math.min(zoom, MAX_CLUSTER_ZOOM));
+        Level level = levels[zoom];
+        long cell = cell(lat, lng, zoom + CELL_SHIFT);
+        int low = 0, high = level.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int i = level.byKey[mid];
+            long midCell = cellOf(level.keys[i]);
+            if (midCell < cell) {
+                low = mid + 1;
+            } else if (midCell > cell) {
+                high = mid - 1;
+            } else {
+                return cluster(level, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Number of clusters at a zoom level
+     */
+    public int size(int zoom) {
+        return levels[Math.max(0, Math.min(zoom, MAX_CLUSTER_ZOOM))].size();
+    }
+
+    private static Cluster cluster(Level level, int i) {
+        float[] cheapest = new float[level.cheapest.length];
+        for (int t = 0; t < cheapest.length; t++) {
+            cheapest[t] = level.cheapest[t][i];
+        }
+        return new Cluster(level.keys[i], level.counts[i], level.lats[i], level.lngs[i], cheapest, level.rows[i]);
+    }
+
+    private static int firstAtOrAbove(double[] sorted, double value) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static float minPrice(float current, float price) {
+        if (price <= 0) return current;
+        return current == 0 ? price : Math.min(current, price);
+    }
+
+    /**
+     * Web Mercator cell of a point, with 2^shift cells per axis, packed as y in the high half.
+     */
+    static long cell(double lat, double lng, int shift) {
+        double x = (Math.max(-180, Math.min(180, lng)) + 180) / 360;
+        double sinLat = Math.sin(Math.toRadians(Math.max(-85.05112878, Math.min(85.05112878, lat))));
+        double y = 0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI);
+        long cells = 1L << shift;
+        long cx = Math.min(cells - 1, (long) Math.floor(x * cells));
+        long cy = Math.min(cells - 1, (long) Math.floor(y * cells));
+        return (cy << 16) | cx;
+    }
+
+    private static long parentCell(long cell) {
+        long cx = cell & 0xFFFF;
+        long cy = cell >>> 16;
+        return ((cy >> 1) << 16) | (cx >> 1);
+    }
+
+    /** Cells need at most 2 * 15 bits, leaving the zoom level above them */
+    private static long key(int zoom, long cell) {
+        return ((long) zoom << 32) | cell;
+    }
+
+    private static long cellOf(long key) {
+        return key & 0xFFFFFFFFL;
+    }
+}
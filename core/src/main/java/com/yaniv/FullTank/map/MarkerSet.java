@@ -0,0 +1,158 @@
+package com.yaniv.FullTank.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Markers of the items currently on the map (stations or clusters), keyed by a
+ * stable id such as the station id.
+ * Each update reconciles them with the next list of items: markers are
+ * created only for new items, dropped for items that are gone, and
+ * restyled in place when their style (e.g. the price shown) changed, so a
+ * keystroke or location fix does not rebuild every marker.
+ *
+ * @param <T> Item type
+ * @param <M> Marker type; kept independent of the map library
+ */
+public class MarkerSet<T, M> {
+
+    /**
+     * Creates and updates markers on behalf of the set.
+     */
+    public interface Binder<T, M> {
+        M create(T item, long style);
+
+        /**
+         * Called for every item that keeps its marker.
+         *
+         * @param restyle Whether the style differs from the one the marker was drawn with
+         */
+        void update(M marker, T item, long style, boolean restyle);
+    }
+
+    /**
+     * Markers to add to and remove from the map after an update.
+     */
+    public static class Changes<M> {
+        private final List<M> added;
+        private final List<M> removed;
+        private final int restyled;
+
+        Changes(List<M> added, List<M> removed, int restyled) {
+            this.added = added;
+            this.removed = removed;
+            this.restyled = restyled;
+        }
+
+        public List<M> getAdded() {
+            return added;
+        }
+
+        public List<M> getRemoved() {
+            return removed;
+        }
+
+        public int getRestyled() {
+            return restyled;
+        }
+    }
+
+    private static class Entry<M> {
+        final M marker;
+        long style;
+        /** Update that last saw this station */
+        int generation;
+
+        Entry(M marker, long style) {
+            this.marker = marker;
+            this.style = style;
+        }
+    }
+
+    private final ToLongFunction<T> keyOf;
+    private final Binder<T, M> binder;
+    private final Map<Long, Entry<M>> entries = new HashMap<>();
+    private int generation;
+
+    /**
+     * @param keyOf Stable id of an item; an item keeps its marker while its id stays
+     */
+    public MarkerSet(ToLongFunction<T> keyOf, Binder<T, M> binder) {
+        this.keyOf = keyOf;
+        this.binder = binder;
+    }
+
+    /**
+     * Reconciles the markers with the next items to show.
+     *
+     * @param items Items to show; a repeated id keeps its first occurrence
+     * @param styleOf Style of an item's marker; markers are restyled when it changes
+     */
+    public Changes<M> update(List<T> items, ToLongFunction<T> styleOf) {
+        int current = ++generation;
+        List<M> added = new ArrayList<>();
+        int restyled = 0;
+        for (T item : items) {
+            long style = styleOf.applyAsLong(item);
+            long key = keyOf.applyAsLong(item);
+            Entry<M> entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry<>(binder.create(item, style), style);
+                entries.put(key, entry);
+                added.add(entry.marker);
+            } else if (entry.generation == current) {
+                continue;
+            } else {
+                boolean restyle = entry.style != style;
+                if (restyle) {
+                    entry.style = style;
+                    restyled++;
+                }
+                binder.update(entry.marker, item, style, restyle);
+            }
+            entry.generation = current;
+        }
+
+        List<M> removed = new ArrayList<>();
+        Iterator<Entry<M>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry<M> entry = it.next();
+            if (entry.generation != current) {
+                removed.add(entry.marker);
+                it.remove();
+            }
+        }
+        return new Changes<>(added, removed, restyled);
+    }
+
+    /**
+     * @return The marker of an item, or null if it is not shown
+     */
+    public M get(long key) {
+        Entry<M> entry = entries.get(key);
+        return entry == null ? null : entry.marker;
+    }
+
+    /**
+     * @return All markers currently held
+     */
+    public List<M> markers() {
+        List<M> markers = new ArrayList<>(entries.size());
+        for (Entry<M> entry : entries.values()) {
+            markers.add(entry.marker);
+        }
+        return markers;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
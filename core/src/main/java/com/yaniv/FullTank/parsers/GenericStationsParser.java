@@ -0,0 +1,103 @@
+package com.yaniv.FullTank.parsers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parses the bundled government station list (ITM coordinates, no prices).
+ */
+public class GenericStationsParser {
+    private static final Logger LOG = Logger.getLogger(GenericStationsParser.class.getName());
+
+    /** First id given to generic stations */
+    public static final int FIRST_ID = 2000;
+
+    /**
+     * Parses the station list.
+     * Stations with unreadable coordinates are skipped; on malformed data the
+     * stations parsed so far are returned and the error is logged.
+     *
+     * @param reader Source of the JSON document; not closed
+     * @param genericPrices Prices assigned to every station
+     */
+    public static List<GasStation> parse(Reader reader, FuelPrices genericPrices) {
+        List<GasStation> stations = new ArrayList<>();
+        try {
+            JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
+            JsonArray stationsArray = jsonObject.getAsJsonArray("stations");
+            int id = FIRST_ID;
+            for (JsonElement element : stationsArray) {
+                JsonObject station = element.getAsJsonObject();
+
+                String address = station.get("כתובת").getAsString();
+                String company = station.get("חברה").getAsString();
+                String city = station.has("שם היישוב") ? station.get("שם היישוב").getAsString().trim() : "";
+
+                // Parse ITM coordinates
+                try {
+                    double x = Double.parseDouble(station.get("X").getAsString().split("\\.")[0]);
+                    double y = Double.parseDouble(station.get("Y").getAsString().split("\\.")[0]);
+
+                    GPS coordinates = convertITMToWGS84(x, y);
+
+                    stations.add(new GasStation(
+                            id++,
+                            address,
+                            city,
+                            company,
+                            coordinates,
+                            null, // No opening hours in the data
+                            genericPrices, // No prices in the data
+                            false // Set isFromApi to false for generic stations
+                    ));
+                } catch (Exception e) {
+                    LOG.warning("Error parsing coordinates for station: " + address);
+                }
+            }
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error parsing JSON", e);
+        }
+        return stations;
+    }
+
+    /**
+     * Converts Israeli Transverse Mercator coordinates to WGS84.
+     *
+     * @param x Easting in meters
+     * @param y Northing in meters
+     */
+    public static GPS convertITMToWGS84(double x, double y) {
+        // Constants for ITM to WGS84 conversion
+        final double k0 = 1.0000067;
+        final double a = 6378137.0;
+        final double lon0 = 0.61443473225468920;  // 35.2045169444444 degrees
+        final double lat0 = 0.55386965463774187;  // 31.7343936111111 degrees
+        final double false_e = 219529.584;
+        final double false_n = 626907.390;
+
+        // Compute meridian arc
+        double y1 = y - false_n;
+        double x1 = x - false_e;
+
+        // Compute lat/lon
+        double lat = lat0 + (y1 / (a * k0));
+        double lon = lon0 + (x1 / (a * k0 * Math.cos(lat0)));
+
+        // Convert to degrees
+        lat = Math.toDegrees(lat);
+        lon = Math.toDegrees(lon);
+
+        return new GPS(lat, lon);
+    }
+}
@@ -0,0 +1,155 @@
+package com.yaniv.FullTank.parsers;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Parses the Mika station listing and station pages.
+ * Fetching and geocoding are left to the caller.
+ */
+public class MikaParser {
+    private static final Logger LOG = Logger.getLogger(MikaParser.class.getName());
+
+    private static final String NEW_PREFIX = "חדש!";
+
+    /**
+     * One station link of the listing page.
+     */
+    public static class Listing {
+        private final String stationText;
+        private final String url;
+        private final String company;
+
+        Listing(String stationText, String url, String company) {
+            this.stationText = stationText;
+            this.url = url;
+            this.company = company;
+        }
+
+        /** Station name and address, as geocoded */
+        public String getStationText() {
+            return stationText;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getCompany() {
+            return company;
+        }
+    }
+
+    /**
+     * Details of one station page; prices are 0 where not listed.
+     */
+    public static class StationPage {
+        private final String openingHours;
+        private final double petrol95;
+        private final double petrol98;
+        private final double diesel;
+
+        StationPage(String openingHours, double petrol95, double petrol98, double diesel) {
+            this.openingHours = openingHours;
+            this.petrol95 = petrol95;
+            this.petrol98 = petrol98;
+            this.diesel = diesel;
+        }
+
+        public String getOpeningHours() {
+            return openingHours;
+        }
+
+        public double getPetrol95() {
+            return petrol95;
+        }
+
+        public double getPetrol98() {
+            return petrol98;
+        }
+
+        public double getDiesel() {
+            return diesel;
+        }
+    }
+
+    /**
+     * Reads the station links of the listing page, skipping duplicates and non-http links.
+     */
+    public static List<Listing> parseListing(String html) {
+        List<Listing> listings = new ArrayList<>();
+        Set<String> processedStations = new HashSet<>(); // To avoid duplicates
+
+        Document doc = Jsoup.parse(html);
+        for (Element h2 : doc.select("h2")) {
+            String fullText = h2.text().trim();
+            if (!processedStations.add(fullText)) {
+                continue;
+            }
+            String innerURL = h2.select("a[href]").attr("href");
+            if (!innerURL.startsWith("http"))
+                continue;
+
+            // Remove "חדש!" prefix if present, but keep the rest exactly as is
+            String stationText = fullText.startsWith(NEW_PREFIX) ?
+                    fullText.substring(NEW_PREFIX.length()).trim() : fullText;
+
+            // Find the company name from the image alt attribute
+            String company = "unknown";
+            Element parent = h2.parent();
+            if (parent != null) {
+                Element img = parent.select("img[class^=alignnone]").first();
+                if (img != null) {
+                    String alt = img.attr("alt");
+                    if (!alt.isEmpty()) {
+                        company = alt;
+                    }
+                } else {
+                    LOG.fine("No image found with class starting with alignnone");
+                }
+            }
+            listings.add(new Listing(stationText, innerURL, company));
+        }
+        return listings;
+    }
+
+    /**
+     * Reads opening hours and cash prices from a station page.
+     *
+     * @throws NumberFormatException If a listed price is not a number
+     */
+    public static StationPage parseStationPage(String html) {
+        Document innerDoc = Jsoup.parse(html);
+        String openingHours = innerDoc.select(".info.activity-hours .sub-title").text();
+        Elements priceElements = innerDoc.select(".info.cash .list li");
+        double petrol95 = 0.0;
+        double petrol98 = 0.0;
+        double diesel = 0.0;
+        for (Element priceElement : priceElements) {
+            String fuelType = priceElement.select(".sub-title").text();
+            String price = priceElement.select("span.value").text().replace("₪", "").trim();
+            if (price.isEmpty())
+                continue;
+            switch (fuelType) {
+                case "בנזין 95":
+                    petrol95 = Double.parseDouble(price);
+                    break;
+                case "בנזין 98":
+                    petrol98 = Double.parseDouble(price);
+                    break;
+                case "סולר":
+                    diesel = Double.parseDouble(price);
+                    break;
+            }
+        }
+        return new StationPage(openingHours, petrol95, petrol98, diesel);
+    }
+}
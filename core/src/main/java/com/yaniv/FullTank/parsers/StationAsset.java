@@ -0,0 +1,174 @@
+package com.yaniv.FullTank.parsers;
+
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of the bundled government station list.
+ * The JSON is parsed and its ITM coordinates converted once, at build time
+ * (see {@link #main}); the app then reads the result with no text parsing.
+ * <p>
+ * Layout, big endian:
+ * <pre>
+ * header   int magic, int version, int station count, int string count
+ * stations per station: int lat, int lng (degrees * 1e7),
+ *          int address, int city, int company (string table indices)
+ * offsets  string count + 1 ints, start of each string in the data
+ * data     the strings, UTF-8, each distinct string once
+ * </pre>
+ */
+public class StationAsset {
+    /** "FTSA" */
+    private static final int MAGIC = 0x46545341;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 20;
+    /** Fixed point scale of the coordinates, about 1 cm */
+    private static final double COORDINATE_SCALE = 1e7;
+
+    /**
+     * Build time entry point: {@code StationAsset <stations.json> <output>}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: StationAsset <stations.json> <output>");
+        }
+        List<GasStation> stations;
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            stations = GenericStationsParser.parse(reader, new FuelPrices(0, 0, 0));
+        }
+        if (stations.isEmpty()) {
+            throw new IOException("No stations parsed from " + args[0]);
+        }
+        Path output = Paths.get(args[1]);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (OutputStream out = Files.newOutputStream(output)) {
+            write(stations, out);
+        }
+    }
+
+    /**
+     * Writes stations in the asset layout.
+     * Ids, opening hours, prices and the API flag are not stored; see {@link #read}.
+     *
+     * @param out Destination; not closed
+     */
+    public static void write(List<GasStation> stations, OutputStream out) throws IOException {
+        List<byte[]> strings = new ArrayList<>();
+        Map<String, Integer> indexOfString = new HashMap<>();
+        int[] records = new int[stations.size() * 5];
+        for (int i = 0; i < stations.size(); i++) {
+            GasStation station = stations.get(i);
+            records[i * 5] = (int) Math.round(station.getGps().getLat() * COORDINATE_SCALE);
+            records[i * 5 + 1] = (int) Math.round(station.getGps().getLng() * COORDINATE_SCALE);
+            records[i * 5 + 2] = intern(station.getAddress(), strings, indexOfString);
+            records[i * 5 + 3] = intern(station.getCity(), strings, indexOfString);
+            records[i * 5 + 4] = intern(station.getCompany(), strings, indexOfString);
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(stations.size());
+        data.writeInt(strings.size());
+        for (int value : records) {
+            data.writeInt(value);
+        }
+        int offset = 0;
+        for (byte[] string : strings) {
+            data.writeInt(offset);
+            offset += string.length;
+        }
+        data.writeInt(offset);
+        for (byte[] string : strings) {
+            data.write(string);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads stations from an asset. Each distinct string is decoded once and
+     * shared by every station using it.
+     * Stations get ids from {@link GenericStationsParser#FIRST_ID} in order, no
+     * opening hours and are not from an API, as from {@link GenericStationsParser}.
+     *
+     * @param buffer The asset, e.g. memory mapped; read from its position, which is left unchanged
+     * @param genericPrices Prices assigned to every station
+     * @throws IOException If the data is not a station asset of this version
+     */
+    public static List<GasStation> read(ByteBuffer buffer, FuelPrices genericPrices) throws IOException {
+        int base = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(base) != MAGIC) {
+            throw new IOException("Not a station asset");
+        }
+        if (buffer.getInt(base + 4) != VERSION) {
+            throw new IOException("Unsupported station asset version " + buffer.getInt(base + 4));
+        }
+        int count = buffer.getInt(base + 8);
+        int stringCount = buffer.getInt(base + 12);
+        int records = base + HEADER_SIZE;
+        int offsets = records + count * RECORD_SIZE;
+        int data = offsets + (stringCount + 1) * 4;
+
+        String[] strings = new String[stringCount];
+        byte[] scratch = new byte[64];
+        ByteBuffer view = buffer.duplicate();
+        for (int i = 0; i < stringCount; i++) {
+            int start = buffer.getInt(offsets + i * 4);
+            int length = buffer.getInt(offsets + i * 4 + 4) - start;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            view.position(data + start);
+            view.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        List<GasStation> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int record = records + i * RECORD_SIZE;
+            double lat = buffer.getInt(record) / COORDINATE_SCALE;
+            double lng = buffer.getInt(record + 4) / COORDINATE_SCALE;
+            stations.add(new GasStation(
+                    GenericStationsParser.FIRST_ID + i,
+                    strings[buffer.getInt(record + 8)],
+                    strings[buffer.getInt(record + 12)],
+                    strings[buffer.getInt(record + 16)],
+                    new GPS(lat, lng),
+                    null, // No opening hours in the data
+                    genericPrices, // No prices in the data
+                    false
+            ));
+        }
+        return stations;
+    }
+
+    private static int intern(String value, List<byte[]> strings, Map<String, Integer> indexOfString) {
+        String key = value == null ? "" : value;
+        Integer index = indexOfString.get(key);
+        if (index == null) {
+            index = strings.size();
+            strings.add(key.getBytes(StandardCharsets.UTF_8));
+            indexOfString.put(key, index);
+        }
+        return index;
+    }
+}
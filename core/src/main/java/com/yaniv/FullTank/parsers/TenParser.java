@@ -0,0 +1,372 @@
+package com.yaniv.FullTank.parsers;
+
+import static java.lang.Double.max;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parses the Ten "generalDeclaration" API payload into stations and the
+ * regulated (government) fuel prices it declares.
+ * The payload is read as a stream: only "stationsArr" and "fuel_typesArr" are
+ * looked at, every other subtree (images, menus, translations...) is skipped
+ * without being built, and stations are handed to a {@link Sink} one at a time.
+ */
+public class TenParser {
+    private static final Logger LOG = Logger.getLogger(TenParser.class.getName());
+
+    /** Fuel type codes used by the Ten API */
+    private static final String CODE_DIESEL = "0";
+    private static final String CODE_95 = "5";
+    private static final String CODE_98 = "6";
+
+    /**
+     * Receives stations as they are parsed.
+     */
+    public interface Sink {
+        void onStation(GasStation station);
+    }
+
+    /**
+     * Stations and regulated prices read from one payload.
+     */
+    public static class Result {
+        private final List<GasStation> stations;
+        private final FuelPrices regulatedPrices;
+
+        public Result(List<GasStation> stations, FuelPrices regulatedPrices) {
+            this.stations = stations;
+            this.regulatedPrices = regulatedPrices;
+        }
+
+        public List<GasStation> getStations() {
+            return stations;
+        }
+
+        /**
+         * @return Regulated self-service prices for 95 and diesel, 0 where not declared
+         */
+        public FuelPrices getRegulatedPrices() {
+            return regulatedPrices;
+        }
+    }
+
+    /**
+     * Parses the stations and regulated prices of a payload.
+     * On malformed data the stations parsed so far are returned and the error is logged.
+     */
+    public static Result parse(String json) {
+        List<GasStation> stations = new ArrayList<>();
+        FuelPrices regulatedPrices = parse(new StringReader(json), stations::add);
+        return new Result(stations, regulatedPrices);
+    }
+
+    /**
+     * Streams the stations of a payload to a sink.
+     * A station without its own 95 or diesel price gets the regulated one, which the
+     * payload declares after the stations; such stations are held back until it is
+     * read, all others reach the sink as soon as they are parsed.
+     * On malformed data the error is logged and parsing stops.
+     *
+     * @param reader Source of the payload; not closed
+     * @param sink Receives every station, on the calling thread
+     * @return Regulated self-service prices for 95 and diesel, 0 where not declared
+     */
+    public static FuelPrices parse(Reader reader, Sink sink) {
+        FuelPrices regulatedPrices = new FuelPrices(0, 0, 0);
+        List<GasStation> pending = new ArrayList<>();
+        try {
+            JsonReader json = new JsonReader(reader);
+            json.setStrictness(Strictness.LENIENT);
+            if (enterData(json)) {
+                boolean regulatedKnown = false;
+                while (json.hasNext()) {
+                    switch (json.nextName()) {
+                        case "stationsArr":
+                            json.beginArray();
+                            while (json.hasNext()) {
+                                GasStation station = readStation(json);
+                                if (regulatedKnown) {
+                                    fillRegulated(station.getFuel_prices(), regulatedPrices);
+                                    sink.onStation(station);
+                                } else if (needsRegulated(station.getFuel_prices())) {
+                                    pending.add(station);
+                                } else {
+                                    sink.onStation(station);
+                                }
+                            }
+                            json.endArray();
+                            break;
+                        case "fuel_typesArr":
+                            readRegulatedPrices(json, regulatedPrices);
+                            regulatedKnown = true;
+                            break;
+                        default:
+                            json.skipValue();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error parsing station data", e);
+        } finally {
+            for (GasStation station : pending) {
+                fillRegulated(station.getFuel_prices(), regulatedPrices);
+                sink.onStation(station);
+            }
+        }
+        return regulatedPrices;
+    }
+
+    /**
+     * Reads only the regulated self-service prices of 95 and diesel from a payload.
+     */
+    public static FuelPrices parseRegulatedPrices(String json) {
+        return parseRegulatedPrices(new StringReader(json));
+    }
+
+    /**
+     * Reads only the regulated self-service prices of 95 and diesel from a payload,
+     * skipping the stations.
+     *
+     * @param reader Source of the payload; not closed
+     */
+    public static FuelPrices parseRegulatedPrices(Reader reader) {
+        FuelPrices regulatedPrices = new FuelPrices(0, 0, 0);
+        try {
+            JsonReader json = new JsonReader(reader);
+            json.setStrictness(Strictness.LENIENT);
+            if (enterData(json)) {
+                while (json.hasNext()) {
+                    if (json.nextName().equals("fuel_typesArr")) {
+                        readRegulatedPrices(json, regulatedPrices);
+                        break;
+                    }
+                    json.skipValue();
+                }
+            }
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error parsing regulated prices", e);
+        }
+        return regulatedPrices;
+    }
+
+    /**
+     * Moves the reader into the top level "data" object.
+     * @return Whether the payload has one
+     */
+    private static boolean enterData(JsonReader json) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("data") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                json.beginObject();
+                return true;
+            }
+            json.skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * Reads one station object. The 95 and diesel prices are NaN where the
+     * regulated price has to be filled in.
+     */
+    private static GasStation readStation(JsonReader json) throws IOException {
+        int id = 0;
+        String address = null;
+        double lat = 0, lng = 0;
+        String openingHours = "";
+        double petrol95 = 0.0;
+        double petrol98 = 0.0;
+        double diesel = 0.0;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id":
+                    // Unique id from the API
+                    id = Integer.parseInt(json.nextString());
+                    break;
+                case "full_address":
+                    address = json.nextString();
+                    break;
+                case "gps":
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        String name = json.nextName();
+                        if (name.equals("lat")) lat = json.nextDouble();
+                        else if (name.equals("lng")) lng = json.nextDouble();
+                        else json.skipValue();
+                    }
+                    json.endObject();
+                    break;
+                case "opening_hours":
+                    openingHours = readOpeningHours(json);
+                    break;
+                case "fuel_prices":
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        if (!json.nextName().equals("by_fuel_type")) {
+                            json.skipValue();
+                            continue;
+                        }
+                        json.beginObject();
+                        while (json.hasNext()) {
+                            String code = json.nextName();
+                            if (code.equals(CODE_95)) {
+                                petrol95 = readFuelPrice(json, true);
+                            } else if (code.equals(CODE_98)) {
+                                petrol98 = readFuelPrice(json, false);
+                            } else if (code.equals(CODE_DIESEL)) {
+                                diesel = readFuelPrice(json, true);
+                            } else {
+                                json.skipValue();
+                            }
+                        }
+                        json.endObject();
+                    }
+                    json.endObject();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        return new GasStation(id, address, "טן", new GPS(lat, lng), openingHours,
+                new FuelPrices(petrol98, petrol95, diesel), true);
+    }
+
+    /**
+     * @return "Day d: from-to, " for every day with non zero hours, in payload order
+     */
+    private static String readOpeningHours(JsonReader json) throws IOException {
+        StringBuilder openingHours = new StringBuilder();
+        json.beginObject();
+        while (json.hasNext()) {
+            String day = json.nextName();
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            String fromHour = null, toHour = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                if (!json.nextName().equals("hoursArr") || json.peek() != JsonToken.BEGIN_ARRAY) {
+                    json.skipValue();
+                    continue;
+                }
+                json.beginArray();
+                if (json.hasNext()) {
+                    // Only the first range of a day is shown
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        String name = json.nextName();
+                        if (name.equals("from_hour")) fromHour = nextStringOrNull(json);
+                        else if (name.equals("to_hour")) toHour = nextStringOrNull(json);
+                        else json.skipValue();
+                    }
+                    json.endObject();
+                }
+                while (json.hasNext()) json.skipValue();
+                json.endArray();
+            }
+            json.endObject();
+
+            if (fromHour != null && toHour != null && (!fromHour.equals("0") || !toHour.equals("0"))) {
+                openingHours.append("Day ").append(day)
+                        .append(": ").append(fromHour)
+                        .append("-").append(toHour)
+                        .append(", ");
+            }
+        }
+        json.endObject();
+        return openingHours.toString();
+    }
+
+    /**
+     * Reads a fuel's prices object.
+     * @param withCash Whether the cash price counts too, as the higher of the two
+     * @return The price, 0 if missing, NaN if missing where the regulated price applies
+     */
+    private static double readFuelPrice(JsonReader json, boolean withCash) throws IOException {
+        double selfService = 0.0, cash = 0.0;
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (name.equals("self_service")) selfService = nextPrice(json);
+            else if (withCash && name.equals("cash")) cash = nextPrice(json);
+            else json.skipValue();
+        }
+        json.endObject();
+        double price = max(selfService, cash);
+        return withCash && price == 0.0 ? Double.NaN : price;
+    }
+
+    private static boolean needsRegulated(FuelPrices prices) {
+        return Double.isNaN(prices.getPetrol_95()) || Double.isNaN(prices.getDiesel());
+    }
+
+    private static void fillRegulated(FuelPrices prices, FuelPrices regulatedPrices) {
+        if (Double.isNaN(prices.getPetrol_95())) {
+            prices.setPetrol_95(regulatedPrices.getPetrol_95());
+        }
+        if (Double.isNaN(prices.getDiesel())) {
+            prices.setDiesel(regulatedPrices.getDiesel());
+        }
+    }
+
+    /**
+     * @return The price, 0 if null
+     */
+    private static double nextPrice(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return 0.0;
+        }
+        return json.nextDouble();
+    }
+
+    private static String nextStringOrNull(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextString();
+    }
+
+    private static void readRegulatedPrices(JsonReader json, FuelPrices into) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            String code = null;
+            // Kept as text, fuels other than 95 and diesel may declare it empty
+            String regulated = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("code")) code = json.nextString();
+                else if (name.equals("regulated_price_self_service")) regulated = nextStringOrNull(json);
+                else json.skipValue();
+            }
+            json.endObject();
+            if (regulated == null) continue;
+            if (CODE_95.equals(code)) {
+                into.setPetrol_95(Double.parseDouble(regulated));
+            } else if (CODE_DIESEL.equals(code)) {
+                into.setDiesel(Double.parseDouble(regulated));
+            }
+        }
+        json.endArray();
+    }
+}
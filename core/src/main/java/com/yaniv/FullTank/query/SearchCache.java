@@ -0,0 +1,79 @@
+package com.yaniv.FullTank.query;
+
+import com.yaniv.FullTank.index.SearchIndex;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recent search results of one snapshot, reused while the user types.
+ * A query seen before is answered from the cache, so backspacing returns the
+ * results cached on the way in. A query that extends a cached one only
+ * rechecks that query's matches instead of searching the whole index.
+ * Results are bounded by their total number of rows, not by entry count.
+ */
+public class SearchCache {
+    /** Total rows kept across all cached results */
+    static final int MAX_CACHED_ROWS = 200_000;
+    /** A cached superset larger than this share of all stations is not worth rechecking */
+    private static final int MAX_REFINE_DIVISOR = 4;
+
+    private final SearchIndex index;
+    /** Normalized query to its ascending matches, least recently used first */
+    private final LinkedHashMap<String, int[]> results = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedRows;
+
+    public SearchCache(SearchIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Same as {@link SearchIndex#search(String)}, answered from recent results when possible.
+     *
+     * @return Ascending matching indices; a new array the caller may modify
+     */
+    public synchronized int[] search(String query) {
+        String q = SearchIndex.normalize(query);
+        if (q.isEmpty()) {
+            return index.search(q);
+        }
+        int[] cached = results.get(q);
+        if (cached != null) {
+            return cached.clone();
+        }
+
+        int[] superset = longestContainedResult(q);
+        int[] matches = superset != null && superset.length <= index.size() / MAX_REFINE_DIVISOR
+                ? index.refine(q, superset)
+                : index.search(q);
+        put(q, matches);
+        return matches.clone();
+    }
+
+    /** Result of the longest cached query contained in q, or null if none is */
+    private int[] longestContainedResult(String q) {
+        // Iterating does not count as access, so probing leaves the LRU order alone
+        String best = null;
+        int[] bestResult = null;
+        for (Map.Entry<String, int[]> entry : results.entrySet()) {
+            String key = entry.getKey();
+            if ((best == null || key.length() > best.length()) && q.contains(key)) {
+                best = key;
+                bestResult = entry.getValue();
+            }
+        }
+        return bestResult;
+    }
+
+    private void put(String q, int[] matches) {
+        if (matches.length > MAX_CACHED_ROWS) return;
+        results.put(q, matches);
+        cachedRows += matches.length;
+        Iterator<Map.Entry<String, int[]>> eldest = results.entrySet().iterator();
+        while (cachedRows > MAX_CACHED_ROWS && eldest.hasNext()) {
+            cachedRows -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+}
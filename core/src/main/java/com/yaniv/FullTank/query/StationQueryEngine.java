@@ -0,0 +1,156 @@
+package com.yaniv.FullTank.query;
+
+import com.yaniv.FullTank.dm.FuelType;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.index.DistanceEngine;
+import com.yaniv.FullTank.index.PriceIndex;
+import com.yaniv.FullTank.index.SearchIndex;
+import com.yaniv.FullTank.index.SpatialIndex;
+import com.yaniv.FullTank.index.StationStore;
+import com.yaniv.FullTank.map.ClusterIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Search, nearby and sort queries over one loaded station snapshot.
+ * The columnar store and every index are built in the constructor, so an engine
+ * is immutable once published and can be swapped as a whole when new data loads;
+ * queries never see a store and an index from different loads.
+ */
+public class StationQueryEngine {
+    /** Maximum number of stations returned by {@link #getNearbyStations} */
+    public static final int MAX_NEARBY_RESULTS = 20;
+
+    private final StationStore store;
+    private final DistanceEngine distanceEngine;
+    private final SpatialIndex spatialIndex;
+    private final PriceIndex priceIndex;
+    private final SearchCache searchCache;
+    private final ClusterIndex clusterIndex;
+
+    /**
+     * Copies the stations into a columnar store and builds all indexes over it.
+     * The list is not retained.
+     */
+    public StationQueryEngine(List<GasStation> stations) {
+        this.store = StationStore.from(stations);
+        this.distanceEngine = DistanceEngine.forStore(store);
+        this.spatialIndex = SpatialIndex.build(store, distanceEngine);
+        this.priceIndex = PriceIndex.build(store);
+        this.searchCache = new SearchCache(SearchIndex.build(store));
+        this.clusterIndex = ClusterIndex.build(store, null);
+    }
+
+    /**
+     * @return An engine over no stations
+     */
+    public static StationQueryEngine empty() {
+        return new StationQueryEngine(new ArrayList<>());
+    }
+
+    /**
+     * Finds stations whose address, company or city contains the query.
+     *
+     * @param query Search text; blank returns every station
+     * @param userLocation Origin for distances, or null if unknown
+     * @param fuelType Fuel type used for price order
+     * @param sortByPrice Cheapest first if true, otherwise nearest first (when the location is known)
+     * @return Matching rows with their distances
+     */
+    public StationResults filterStations(String query, GPS userLocation, FuelType fuelType, boolean sortByPrice) {
+        if (query == null || query.trim().isEmpty()) {
+            return StationResults.all(store);
+        }
+
+        // Matches come back in row order, as a full scan would produce them
+        int[] matches = searchCache.search(query);
+        if (sortByPrice) {
+            priceIndex.sortByPrice(matches, fuelType);
+        }
+        float[] distances = new float[matches.length];
+        if (userLocation != null) {
+            DistanceEngine.Query origin = new DistanceEngine.Query(userLocation.getLat(), userLocation.getLng());
+            distanceEngine.distances(origin, matches, distances);
+            if (!sortByPrice) {
+                sortByDistance(matches, distances);
+            }
+        }
+        return new StationResults(store, matches, distances);
+    }
+
+    /**
+     * Finds up to {@link #MAX_NEARBY_RESULTS} stations within {@code maxDistance} meters.
+     *
+     * @param userLocation Origin of the search
+     * @param fuelType Fuel type used for price order
+     * @param sortByPrice Cheapest first if true, otherwise nearest first
+     * @param maxDistance Search radius in meters
+     * @return Nearby rows with their distances
+     */
+    public StationResults getNearbyStations(GPS userLocation, FuelType fuelType, boolean sortByPrice, float maxDistance) {
+        double lat = userLocation.getLat();
+        double lng = userLocation.getLng();
+
+        // Distance order only needs the closest few, price order needs everything in range
+        if (!sortByPrice) {
+            SpatialIndex.Hits hits = spatialIndex.nearest(lat, lng, MAX_NEARBY_RESULTS, maxDistance);
+            return new StationResults(store, hits.indices, hits.distances);
+        }
+        SpatialIndex.Hits hits = spatialIndex.withinRadius(lat, lng, maxDistance);
+        int[] selected = priceIndex.cheapest(hits.indices, fuelType, MAX_NEARBY_RESULTS);
+        float[] distances = new float[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            // Radius hits are in row order, so the distance of a price-selected row can be looked up
+            distances[i] = hits.distances[Arrays.binarySearch(hits.indices, selected[i])];
+        }
+        return new StationResults(store, selected, distances);
+    }
+
+    /**
+     * Sorts rows and their distances together, nearest first.
+     * Ties keep their current order, like a stable sort of the rows by distance.
+     */
+    private static void sortByDistance(int[] rows, float[] distances) {
+        // Distances are non-negative, so their raw bits sort like the floats themselves
+        long[] packed = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            packed[i] = ((long) Float.floatToRawIntBits(distances[i]) << 32) | i;
+        }
+        Arrays.sort(packed);
+        int[] sortedRows = new int[rows.length];
+        for (int i = 0; i < packed.length; i++) {
+            int from = (int) packed[i];
+            sortedRows[i] = rows[from];
+            distances[i] = Float.intBitsToFloat((int) (packed[i] >>> 32));
+        }
+        System.arraycopy(sortedRows, 0, rows, 0, rows.length);
+    }
+
+    /**
+     * @return All stations of the snapshot; rows are materialized as they are read
+     */
+    public List<GasStation> getAllStations() {
+        return store.asList();
+    }
+
+    /**
+     * @return The snapshot's columnar store, for index-based scans that should not allocate
+     */
+    public StationStore getStore() {
+        return store;
+    }
+
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * @return Map clusters of every station of the snapshot
+     */
+    public ClusterIndex getClusterIndex() {
+        return clusterIndex;
+    }
+}
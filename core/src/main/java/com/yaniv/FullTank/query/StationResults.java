@@ -0,0 +1,109 @@
+package com.yaniv.FullTank.query;
+
+import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.index.StationStore;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Read-only result of a query: store rows in result order with the distance to
+ * each from the query origin.
+ * Distances travel with the rows instead of being written into the shared, cached
+ * {@link GasStation} objects, which concurrent queries and the UI read at the same
+ * time. As a list it materializes stations only as they are accessed.
+ */
+public class StationResults extends AbstractList<GasStation> {
+    private static final StationResults EMPTY =
+            new StationResults(StationStore.from(Collections.emptyList()), new int[0], null);
+
+    private final StationStore store;
+    /** Rows in result order, or null for every row of the store in row order */
+    private final int[] rows;
+    /** Distance in meters per result, or null when the origin is unknown */
+    private final float[] distances;
+
+    StationResults(StationStore store, int[] rows, float[] distances) {
+        this.store = store;
+        this.rows = rows;
+        this.distances = distances;
+    }
+
+    /**
+     * @return Every row of the store, in row order, without distances
+     */
+    static StationResults all(StationStore store) {
+        return new StationResults(store, null, null);
+    }
+
+    /**
+     * @return Results over no rows
+     */
+    public static StationResults empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return The snapshot the rows belong to
+     */
+    public StationStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return Whether the results are every row of the store, in row order
+     */
+    public boolean coversStore() {
+        return rows == null;
+    }
+
+    /**
+     * @return The store row of the i-th result
+     */
+    public int row(int i) {
+        if (rows == null) {
+            if (i < 0 || i >= store.size()) throw new IndexOutOfBoundsException("Index: " + i);
+            return i;
+        }
+        return rows[i];
+    }
+
+    /**
+     * @return The distance in meters from the query origin to the i-th result, 0 if the origin is unknown
+     */
+    public float distance(int i) {
+        return distances == null ? 0 : distances[i];
+    }
+
+    /**
+     * @return The results whose station comes from an API, in the same order and with the same distances
+     */
+    public StationResults fromApiOnly() {
+        int n = size();
+        int[] keptRows = new int[n];
+        float[] keptDistances = distances == null ? null : new float[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int row = row(i);
+            if (!store.isFromApi(row)) continue;
+            keptRows[count] = row;
+            if (keptDistances != null) {
+                keptDistances[count] = distances[i];
+            }
+            count++;
+        }
+        return new StationResults(store, Arrays.copyOf(keptRows, count),
+                keptDistances == null ? null : Arrays.copyOf(keptDistances, count));
+    }
+
+    @Override
+    public GasStation get(int index) {
+        return store.station(row(index));
+    }
+
+    @Override
+    public int size() {
+        return rows == null ? store.size() : rows.length;
+    }
+}
@@ -0,0 +1,84 @@
+package com.yaniv.FullTank.index;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import com.yaniv.FullTank.dm.FuelType;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link PriceIndex} against a stable sort of row-ordered stations by price.
+ * The fixture has many tied and zero prices, so tie order is covered too.
+ */
+public class PriceIndexTest {
+    @Test
+    public void sortByPriceMatchesStableSort() {
+        StationStore store = StationStore.from(RandomStations.create(11, 4_000));
+        PriceIndex index = PriceIndex.build(store);
+        Random random = new Random(11);
+        for (FuelType type : FuelType.values()) {
+            for (int q = 0; q < 200; q++) {
+                // Small subsets take the rank path, large ones filter the presorted order
+                int[] rows = subset(random, store.size(), q % 2 == 0 ? 50 : store.size());
+                int[] actual = rows.clone();
+                index.sortByPrice(actual, type);
+                assertArrayEquals(stableSort(store, type, rows), actual);
+            }
+        }
+    }
+
+    @Test
+    public void cheapestMatchesPrefixOfStableSort() {
+        StationStore store = StationStore.from(RandomStations.create(12, 4_000));
+        PriceIndex index = PriceIndex.build(store);
+        Random random = new Random(12);
+        for (FuelType type : FuelType.values()) {
+            for (int q = 0; q < 200; q++) {
+                int[] rows = subset(random, store.size(), q % 2 == 0 ? 60 : store.size());
+                int k = random.nextInt(40);
+                int[] expected = stableSort(store, type, rows);
+                int[] prefix = new int[Math.min(k, expected.length)];
+                System.arraycopy(expected, 0, prefix, 0, prefix.length);
+                assertArrayEquals(prefix, index.cheapest(rows, type, k));
+            }
+        }
+    }
+
+    @Test
+    public void emptyAndSingleSetsAreUnchanged() {
+        StationStore store = StationStore.from(RandomStations.create(13, 10));
+        PriceIndex index = PriceIndex.build(store);
+        int[] empty = new int[0];
+        index.sortByPrice(empty, FuelType.PETROL_95);
+        assertArrayEquals(new int[0], index.cheapest(empty, FuelType.PETROL_95, 5));
+        int[] single = {7};
+        index.sortByPrice(single, FuelType.DIESEL);
+        assertArrayEquals(new int[]{7}, single);
+        assertArrayEquals(new int[]{7}, index.cheapest(single, FuelType.DIESEL, 3));
+    }
+
+    /** Random ascending rows, as queries hand them to the index */
+    private static int[] subset(Random random, int size, int maxCount) {
+        int count = random.nextInt(maxCount + 1);
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            if (random.nextInt(size) < count) {
+                rows.add(row);
+            }
+        }
+        return SpatialIndexTest.toArray(rows);
+    }
+
+    private static int[] stableSort(StationStore store, FuelType type, int[] rows) {
+        List<Integer> sorted = new ArrayList<>();
+        for (int row : rows) {
+            sorted.add(row);
+        }
+        sorted.sort((a, b) -> Float.compare(store.price(type, a), store.price(type, b)));
+        return SpatialIndexTest.toArray(sorted);
+    }
+}
@@ -0,0 +1,62 @@
+package com.yaniv.FullTank.index;
+
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded random station fixtures shaped like the real data: coordinates
+ * across Israel with some clustered and duplicated points, Hebrew and Latin
+ * text, and prices drawn from a few values so ties and zeros are common.
+ */
+final class RandomStations {
+    static final String[] STREETS = {
+            "הרצל", "ז'בוטינסקי", "דרך בגין", "רחוב שָׁלוֹם", "שד׳ רוטשילד", "כביש 6", "Derech Hashalom", "Main St"
+    };
+    static final String[] CITIES = {"תל אביב", "ירושלים", "חיפה", "באר שבע", "אילת", "Tel Aviv", ""};
+    static final String[] COMPANIES = {"פז", "דלק", "סונול", "דור אלון", "Ten", "Yellow", "TEN"};
+    private static final double[] PRICES = {0, 6.5, 6.99, 7.44, 7.44, 7.9};
+
+    private RandomStations() {
+    }
+
+    static List<GasStation> create(long seed, int count) {
+        Random random = new Random(seed);
+        List<GasStation> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double lat, lng;
+            if (i > 0 && random.nextInt(10) == 0) {
+                // Same point as an earlier station, for distance ties
+                GPS other = stations.get(random.nextInt(i)).getGps();
+                lat = other.getLat();
+                lng = other.getLng();
+            } else if (random.nextInt(3) == 0) {
+                // Dense cluster around central Tel Aviv
+                lat = 32.07 + random.nextGaussian() * 0.02;
+                lng = 34.78 + random.nextGaussian() * 0.02;
+            } else {
+                lat = 29.5 + random.nextDouble() * 3.8;
+                lng = 34.25 + random.nextDouble() * 1.6;
+            }
+            String address = STREETS[random.nextInt(STREETS.length)] + " " + random.nextInt(200);
+            stations.add(new GasStation(
+                    1000 + i,
+                    address,
+                    CITIES[random.nextInt(CITIES.length)],
+                    COMPANIES[random.nextInt(COMPANIES.length)],
+                    new GPS(lat, lng),
+                    null,
+                    new FuelPrices(price(random), price(random), price(random)),
+                    random.nextBoolean()));
+        }
+        return stations;
+    }
+
+    private static double price(Random random) {
+        return PRICES[random.nextInt(PRICES.length)];
+    }
+}
@@ -0,0 +1,93 @@
+package com.yaniv.FullTank.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.query.SearchCache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link SearchIndex} and {@link SearchCache} against {@code contains()}
+ * on each normalized field of every station.
+ */
+public class SearchIndexTest {
+    private static final String[] QUERIES = {
+            "", " ", "   ", "ה", "פ", "t", "T", "6", "הר", "הרצל", "הרצ", "רצל 1", "שלום", "שָׁלוֹם",
+            "ז'ב", "ז׳בוטינסקי", "שד'", "שד׳ רוט", "דרך  בגין", "תל אביב", "אביב\n", "פז", "דור אלון",
+            "ten", "TEN", "Yel", "main st 1", "hashalom", "כביש 6", "ירושלים", "xyz", "הרצל ירושלים", "ּ"
+    };
+
+    @Test
+    public void searchMatchesContainsScan() {
+        for (long seed = 1; seed <= 3; seed++) {
+            List<GasStation> stations = RandomStations.create(seed, 1_500);
+            StationStore store = StationStore.from(stations);
+            SearchIndex index = SearchIndex.build(store);
+            for (String query : queries(seed, stations)) {
+                assertArrayEquals(query, scan(stations, query), index.search(query));
+            }
+        }
+    }
+
+    @Test
+    public void emptyQueryMatchesEveryStation() {
+        List<GasStation> stations = RandomStations.create(4, 100);
+        SearchIndex index = SearchIndex.build(StationStore.from(stations));
+        assertEquals(stations.size(), index.search("").length);
+        assertEquals(stations.size(), index.search(" \t").length);
+        assertEquals(0, SearchIndex.build(StationStore.from(new ArrayList<>())).search("").length);
+        assertEquals(0, SearchIndex.build(StationStore.from(new ArrayList<>())).search("הרצל").length);
+    }
+
+    @Test
+    public void cachedSearchWhileTypingMatchesContainsScan() {
+        List<GasStation> stations = RandomStations.create(5, 3_000);
+        SearchCache cache = new SearchCache(SearchIndex.build(StationStore.from(stations)));
+        for (String word : new String[]{"דרך בגין 12", "הרצל 7", "Main St 3", "דור אלון"}) {
+            // Typing then deleting a word exercises both refinement and cache hits
+            for (int length = 0; length <= word.length(); length++) {
+                String query = word.substring(0, length);
+                assertArrayEquals(query, scan(stations, query), cache.search(query));
+            }
+            for (int length = word.length(); length >= 0; length--) {
+                String query = word.substring(0, length);
+                assertArrayEquals(query, scan(stations, query), cache.search(query));
+            }
+        }
+    }
+
+    /** Fixed queries plus random substrings of the stations' text */
+    private static List<String> queries(long seed, List<GasStation> stations) {
+        List<String> queries = new ArrayList<>(List.of(QUERIES));
+        Random random = new Random(seed);
+        for (int i = 0; i < 300; i++) {
+            GasStation station = stations.get(random.nextInt(stations.size()));
+            String text = random.nextBoolean() ? station.getAddress() : station.getCity() + station.getCompany();
+            if (text.isEmpty()) continue;
+            int start = random.nextInt(text.length());
+            int end = Math.min(text.length(), start + 1 + random.nextInt(6));
+            queries.add(text.substring(start, end));
+        }
+        return queries;
+    }
+
+    private static int[] scan(List<GasStation> stations, String query) {
+        String q = SearchIndex.normalize(query);
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < stations.size(); row++) {
+            GasStation station = stations.get(row);
+            if (SearchIndex.normalize(station.getAddress()).contains(q)
+                    || SearchIndex.normalize(station.getCompany()).contains(q)
+                    || SearchIndex.normalize(station.getCity()).contains(q)) {
+                rows.add(row);
+            }
+        }
+        return SpatialIndexTest.toArray(rows);
+    }
+}
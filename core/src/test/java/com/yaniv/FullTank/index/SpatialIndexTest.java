@@ -0,0 +1,123 @@
+package com.yaniv.FullTank.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks every {@link SpatialIndex} query against a linear scan over the store.
+ */
+public class SpatialIndexTest {
+    private static final float[] RADII = {0, 50, 500, 3_000, 15_000, 120_000, 1_000_000};
+
+    @Test
+    public void withinRadiusMatchesLinearScan() {
+        for (long seed = 1; seed <= 5; seed++) {
+            StationStore store = StationStore.from(RandomStations.create(seed, 2_000));
+            DistanceEngine engine = DistanceEngine.forStore(store);
+            SpatialIndex index = SpatialIndex.build(store, engine);
+            Random random = new Random(seed);
+            for (int q = 0; q < 200; q++) {
+                double[] origin = origin(random, store);
+                float radius = RADII[random.nextInt(RADII.length)];
+                List<Integer> expected = scan(store, engine, origin, radius);
+
+                SpatialIndex.Hits hits = index.withinRadius(origin[0], origin[1], radius);
+                assertArrayEquals(toArray(expected), hits.indices);
+                DistanceEngine.Query query = new DistanceEngine.Query(origin[0], origin[1]);
+                for (int i = 0; i < hits.size(); i++) {
+                    assertEquals(engine.distance(query, hits.indices[i]), hits.distances[i], 0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nearestMatchesStableSortOfLinearScan() {
+        for (long seed = 1; seed <= 5; seed++) {
+            StationStore store = StationStore.from(RandomStations.create(seed, 2_000));
+            DistanceEngine engine = DistanceEngine.forStore(store);
+            SpatialIndex index = SpatialIndex.build(store, engine);
+            Random random = new Random(seed);
+            for (int q = 0; q < 200; q++) {
+                double[] origin = origin(random, store);
+                float radius = RADII[random.nextInt(RADII.length)];
+                int k = random.nextInt(30);
+                DistanceEngine.Query query = new DistanceEngine.Query(origin[0], origin[1]);
+                List<Integer> expected = scan(store, engine, origin, radius);
+                // List.sort is stable, so equal distances keep row order
+                expected.sort((a, b) -> Float.compare(engine.distance(query, a), engine.distance(query, b)));
+                expected = expected.subList(0, Math.min(k, expected.size()));
+
+                SpatialIndex.Hits hits = index.nearest(origin[0], origin[1], k, radius);
+                assertArrayEquals(toArray(expected), hits.indices);
+                for (int i = 0; i < hits.size(); i++) {
+                    assertEquals(engine.distance(query, hits.indices[i]), hits.distances[i], 0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void withinBoxMatchesLinearScan() {
+        StationStore store = StationStore.from(RandomStations.create(7, 3_000));
+        SpatialIndex index = SpatialIndex.build(store, DistanceEngine.forStore(store));
+        Random random = new Random(7);
+        for (int q = 0; q < 300; q++) {
+            double south = 29.4 + random.nextDouble() * 4;
+            double west = 34.2 + random.nextDouble() * 1.8;
+            double north = south + random.nextDouble() * random.nextDouble();
+            double east = west + random.nextDouble() * random.nextDouble();
+            List<Integer> expected = new ArrayList<>();
+            for (int row = 0; row < store.size(); row++) {
+                if (store.lat(row) >= south && store.lat(row) <= north
+                        && store.lng(row) >= west && store.lng(row) <= east) {
+                    expected.add(row);
+                }
+            }
+            assertArrayEquals(toArray(expected), index.withinBox(south, west, north, east));
+        }
+    }
+
+    @Test
+    public void emptyStoreFindsNothing() {
+        StationStore store = StationStore.from(new ArrayList<>());
+        SpatialIndex index = SpatialIndex.build(store, DistanceEngine.forStore(store));
+        assertEquals(0, index.withinRadius(32, 34.8, 10_000).size());
+        assertEquals(0, index.nearest(32, 34.8, 20, 10_000).size());
+        assertEquals(0, index.withinBox(29, 34, 34, 36).length);
+    }
+
+    /** Half the queries start at a station, half anywhere around the country */
+    private static double[] origin(Random random, StationStore store) {
+        if (random.nextBoolean()) {
+            int row = random.nextInt(store.size());
+            return new double[]{store.lat(row), store.lng(row)};
+        }
+        return new double[]{29 + random.nextDouble() * 5, 34 + random.nextDouble() * 2.2};
+    }
+
+    private static List<Integer> scan(StationStore store, DistanceEngine engine, double[] origin, float radius) {
+        DistanceEngine.Query query = new DistanceEngine.Query(origin[0], origin[1]);
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) {
+            if (engine.distance(query, row) <= radius) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    static int[] toArray(List<Integer> rows) {
+        int[] result = new int[rows.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = rows.get(i);
+        }
+        return result;
+    }
+}
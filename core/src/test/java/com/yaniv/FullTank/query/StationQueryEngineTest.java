@@ -0,0 +1,89 @@
+package com.yaniv.FullTank.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.yaniv.FullTank.dm.FuelPrices;
+import com.yaniv.FullTank.dm.FuelType;
+import com.yaniv.FullTank.dm.GPS;
+import com.yaniv.FullTank.dm.GasStation;
+import com.yaniv.FullTank.index.DistanceEngine;
+import com.yaniv.FullTank.index.StationStore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that query results carry their own distances and leave the shared stations untouched.
+ */
+public class StationQueryEngineTest {
+    private static final GPS ORIGIN = new GPS(32.08, 34.78);
+
+    @Test
+    public void searchByDistanceIsStableSortOfMatches() {
+        StationQueryEngine engine = new StationQueryEngine(stations(2_000));
+        StationStore store = engine.getStore();
+        DistanceEngine distanceEngine = DistanceEngine.forStore(store);
+        DistanceEngine.Query origin = new DistanceEngine.Query(ORIGIN.getLat(), ORIGIN.getLng());
+
+        StationResults results = engine.filterStations("street 1", ORIGIN, FuelType.PETROL_95, false);
+        List<Integer> expected = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) {
+            if (store.address(row).contains("street 1")) expected.add(row);
+        }
+        expected.sort((a, b) -> Float.compare(distanceEngine.distance(origin, a), distanceEngine.distance(origin, b)));
+
+        assertEquals(expected.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            int row = expected.get(i);
+            assertEquals(row, results.row(i));
+            assertEquals(distanceEngine.distance(origin, row), results.distance(i), 0f);
+            assertSame(store.station(row), results.get(i));
+        }
+    }
+
+    @Test
+    public void queriesDoNotWriteDistancesIntoStations() {
+        StationQueryEngine engine = new StationQueryEngine(stations(500));
+        StationStore store = engine.getStore();
+        for (int row = 0; row < store.size(); row++) {
+            store.station(row).setDistance(-1);
+        }
+        engine.filterStations("street", ORIGIN, FuelType.DIESEL, true);
+        engine.getNearbyStations(ORIGIN, FuelType.PETROL_95, false, 50_000);
+        engine.getNearbyStations(ORIGIN, FuelType.DIESEL, true, 50_000);
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(-1f, store.station(row).getDistance(), 0f);
+        }
+    }
+
+    @Test
+    public void emptyQueryIsLazyViewOfStore() {
+        StationQueryEngine engine = new StationQueryEngine(stations(100));
+        StationResults results = engine.filterStations(" ", ORIGIN, FuelType.PETROL_95, false);
+        assertTrue(results.coversStore());
+        assertEquals(100, results.size());
+        assertEquals(42, results.row(42));
+        assertEquals(0f, results.distance(42), 0f);
+
+        StationResults fromApi = results.fromApiOnly();
+        for (int i = 0; i < fromApi.size(); i++) {
+            assertTrue(engine.getStore().isFromApi(fromApi.row(i)));
+        }
+    }
+
+    private static List<GasStation> stations(int count) {
+        Random random = new Random(count);
+        List<GasStation> stations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            stations.add(new GasStation(i, "street " + random.nextInt(30), "city", "company",
+                    new GPS(31.5 + random.nextDouble(), 34.5 + random.nextDouble()), null,
+                    new FuelPrices(0, 6 + random.nextInt(3), 7 + random.nextInt(2)), random.nextBoolean()));
+        }
+        return stations;
+    }
+}